@@ -1,14 +1,9 @@
 package decisiontree;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
@@ -19,6 +14,8 @@ public class BagOfTrees {
 	private static final Log log = LogFactory.getLog(BagOfTrees.class);
 
 	private List<Id3> bagOfTrees;
+	// trees compiled for batch voting
+	private CompiledForest compiled;
 
 	/**
 	 * Default constructor
@@ -28,12 +25,14 @@ public class BagOfTrees {
 	}
 
 	/**
-	 * Add a tree to the collection
+	 * Add a tree to the collection, trees may be added from several training
+	 * threads
 	 * 
 	 * @param tree
 	 */
-	public void addTree(Id3 tree) {
+	public synchronized void addTree(Id3 tree) {
 		bagOfTrees.add(tree);
+		compiled = null;
 	}
 
 	/**
@@ -41,15 +40,17 @@ public class BagOfTrees {
 	 * 
 	 * @param trees
 	 */
-	public void addTrees(Id3[] trees) {
+	public synchronized void addTrees(Id3[] trees) {
 		bagOfTrees.addAll(Arrays.asList(trees));
+		compiled = null;
 	}
 	
 	/**
 	 * Add an array of trees to the collection
 	 */
-	public void addTrees(List<Id3> trees) {
+	public synchronized void addTrees(List<Id3> trees) {
 		bagOfTrees.addAll(trees);
+		compiled = null;
 	}
 	
 	
@@ -81,50 +82,43 @@ public class BagOfTrees {
 	}
 
 	/**
-	 * Serialize to a file output the list of trees that are currently held in
-	 * the bag
+	 * Write the trees that are currently held in the bag to a file in the
+	 * compact forest format, compiled against the schema they were all
+	 * trained with
 	 * 
 	 * @param filePath
-	 *            file path that the bag of trees will be saved to
+	 *            file path that the forest will be saved to
 	 */
-	public void serializeBagToFile(String filePath) {
-
-		try {
-			FileOutputStream fout = new FileOutputStream(filePath);
-			ObjectOutputStream oos = new ObjectOutputStream(fout);
-
-			oos.writeObject(bagOfTrees);
-			oos.flush();
-			fout.close();
-
-		} catch (FileNotFoundException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	public void writeForestToFile(String filePath) {
+		if (bagOfTrees.isEmpty()) {
+			throw new IllegalStateException("The bag holds no trees to write");
 		}
-
+		Schema schema = bagOfTrees.get(0).schema();
+		for (Id3 tree : bagOfTrees) {
+			if (tree.schema() != schema) {
+				// such as trees trained from instances filtered to a subset
+				// of the attributes, each with a schema of its own
+				throw new IllegalStateException(
+						"Trees trained with different schemas need the schema of the data set to be written");
+			}
+		}
+		writeForestToFile(filePath, schema);
 	}
 
 	/**
-	 * De-serialize from a file a list of trees
+	 * Write the trees that are currently held in the bag to a file in the
+	 * compact forest format, compiled against the given schema
 	 * 
 	 * @param filePath
-	 *            file path that contains bag of trees
+	 *            file path that the forest will be saved to
+	 * @param schema
 	 */
-	public void readBagFromFile(String filePath) {
+	public void writeForestToFile(String filePath, Schema schema) {
 		try {
-			FileInputStream fin = new FileInputStream(filePath);
-			ObjectInputStream ois = new ObjectInputStream(fin);
-
-			bagOfTrees = (ArrayList<Id3>) ois.readObject();
-
-			ois.close();
-		} catch (Exception e) {
-			e.printStackTrace();
+			compile(schema).write(new File(filePath));
+		} catch (IOException e) {
+			log.error("Unable to write forest to " + filePath, e);
 		}
-
 	}
 
 	/**
@@ -166,6 +160,98 @@ public class BagOfTrees {
 	}
 	
 	
+	/**
+	 * Vote on the most common classification for the given row of columnar
+	 * instances
+	 * 
+	 * @param data
+	 * @param row
+	 * @return
+	 */
+	public String classifyByVote(ColumnarInstances data, int row) {
+		int label = classifyByVote(data, new int[] { row })[0];
+		return label >= 0 ? data.schema().classifiers().value(label) : null;
+	}
+
+	/**
+	 * Vote on the most common class id for each of the given rows of
+	 * columnar instances, ties going to the lowest class id
+	 * 
+	 * @param data
+	 * @param rows
+	 * @return array of class ids, -1 where no tree could classify the row
+	 */
+	public int[] classifyByVote(ColumnarInstances data, int[] rows) {
+		return compile(data.schema()).classifyByVote(data, rows);
+	}
+
+	/**
+	 * Vote on the most common class id for each of the given rows of values
+	 * encoded with the given schema, ties going to the lowest class id
+	 * 
+	 * @param schema
+	 * @param rows
+	 * @return array of class ids, -1 where no tree could classify the row
+	 */
+	public int[] classifyByVote(Schema schema, double[][] rows) {
+		return compile(schema).classifyByVote(rows);
+	}
+
+	/**
+	 * Count the votes of every tree for each of the given rows of columnar
+	 * instances
+	 * 
+	 * @param data
+	 * @param rows
+	 * @return votes of each row for each class id, indexed by row position
+	 *         times the number of classifiers in the schema plus class id
+	 */
+	public int[] votes(ColumnarInstances data, int[] rows) {
+		return compile(data.schema()).votes(data, rows);
+	}
+
+	/**
+	 * Count the votes of every tree for each of the given rows of values
+	 * encoded with the given schema
+	 * 
+	 * @param schema
+	 * @param rows
+	 * @return votes of each row for each class id, indexed by row position
+	 *         times the number of classifiers in the schema plus class id
+	 */
+	public int[] votes(Schema schema, double[][] rows) {
+		return compile(schema).votes(rows);
+	}
+
+	/**
+	 * Get the trees compiled against the given schema, compiling them again
+	 * when trees were added or the schema differs
+	 * 
+	 * @param schema
+	 * @return compiled forest
+	 */
+	public synchronized CompiledForest compile(Schema schema) {
+		if (compiled == null || compiled.schema() != schema) {
+			compiled = new CompiledForest(schema, bagOfTrees);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Return the number of incorrectly classified rows of columnar instances
+	 */
+	public int getOutOfBagErrorCount(ColumnarInstances data, int[] rows) {
+		int[] labels = classifyByVote(data, rows);
+		int count = 0;
+		for (int i = 0; i < rows.length; i++) {
+			if (labels[i] != data.label(rows[i])) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
 	/**
 	 * Return the number of incorrectly classified instances
 	 */
@@ -180,63 +266,4 @@ public class BagOfTrees {
 		return count;
 	}
 
-	/*
-	 * public static void main(String[] args) {
-	 * log.info("Starting BagOfTrees execution"); testBagOfTrees();
-	 * 
-	 * }
-	 * 
-	 * //Quick test to make sure a tree can be serialized/de-serialized public
-	 * static void testBagOfTrees() {
-	 * 
-	 * String PATH_TO_FILE = "data/kddcup.data_2_percent.txt";
-	 * //kddcup.data_xsm.txt //iris.data //kddcup.data_2_percent.txt
-	 * 
-	 * log.info("Loading instances from file");
-	 * 
-	 * // Load instances from file Instances instances = new Instances(new
-	 * File(PATH_TO_FILE));
-	 * 
-	 * log.info("Instantiating a new tree trainer with the loaded instances");
-	 * 
-	 * // Instantiate new TreeTrainer using the loaded instances TreeTrainer
-	 * treeTrainer = new TreeTrainer(instances);
-	 * 
-	 * log.info("Instantiating new bag of trees"); // Instantiate new BagOfTrees
-	 * BagOfTrees bot = new BagOfTrees();
-	 * 
-	 * log.info("Add 10 new randomly created trees to the bag"); // Add 10 trees
-	 * trained on random attributes to the bag of trees
-	 * bot.addTrees(treeTrainer.getTreesTrainedFromRandomAttributes(1));
-	 * 
-	 * // Serialize the bag to an out file
-	 * log.info("Serializing bag of trees to file");
-	 * bot.serializeBagToFile("data/test.txt");
-	 * 
-	 * bot = null; instances = null; treeTrainer = null;
-	 * 
-	 * log.info("Deserializing bag of trees from file"); BagOfTrees botIn = new
-	 * BagOfTrees(); botIn.readBagFromFile("data/test.txt");
-	 * log.info("Serialized file loaded " + botIn.count() + " trees");
-	 * 
-	 * 
-	 * // Create some test instances that we can try and classify String[] names
-	 * = { "#sepal-length", "#sepal-width", "#petal-length", "#petal-width" };
-	 * 
-	 * String[] valuesSersota = { "5.5", "4.2", "1.4", "0.2" }; String[]
-	 * valuesVersicolor = { "5.7", "2.6", "3.5", "1.0" };
-	 * 
-	 * Instance instanceToClasify = new Instance(names, valuesSersota, null);//
-	 * "Iris-setosa" Instance instanceToClasify2 = new Instance(names,
-	 * valuesVersicolor, null); // "Iris-versicolor"
-	 * 
-	 * // Create a new bag of trees that will read in the previously serialized
-	 * // tree set BagOfTrees botIn = new BagOfTrees();
-	 * botIn.readBagFromFile("data/test.txt");
-	 * 
-	 * // Pull out one of the trees from the bag and try to classify our test //
-	 * records System.out.println(botIn.classifyByVote(instanceToClasify));
-	 * System.out.println(botIn.classifyByVote(instanceToClasify2)); }
-	 */
-
 }
@@ -0,0 +1,136 @@
+package decisiontree;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class BaggingTrainer {
+	private static final Log log = LogFactory.getLog(BaggingTrainer.class);
+
+	private ExecutorService executor;
+	// executors handed in by the caller are left running on shutdown
+	private boolean shared;
+	// bootstrap weights shared by the trainers submitted, at most one per
+	// tree training at a time
+	private Queue<Bootstrap> samples = new ConcurrentLinkedQueue<Bootstrap>();
+
+	/**
+	 * Default constructor, training on a thread per available core
+	 */
+	public BaggingTrainer() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor for training on the given number of threads
+	 *
+	 * @param threads
+	 */
+	public BaggingTrainer(int threads) {
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		shared = false;
+	}
+
+	/**
+	 * Constructor for training on the given executor
+	 *
+	 * @param executor
+	 */
+	public BaggingTrainer(ExecutorService executor) {
+		this.executor = executor;
+		shared = true;
+	}
+
+	/**
+	 * Submit the given number of trees for training. Each tree draws its
+	 * random attributes from its own generator seeded by its index, so the
+	 * trees are the same whichever thread trains them. Bootstrap weights are
+	 * reused across every trainer submitted
+	 *
+	 * @param trainer
+	 * @param count
+	 *            number of trees to train
+	 * @return pending trees in index order
+	 */
+	public List<Future<Id3>> submit(final TreeTrainer trainer, int count) {
+		trainer.setSamples(samples);
+		List<Future<Id3>> futures = new ArrayList<Future<Id3>>(count);
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			futures.add(executor.submit(new Callable<Id3>() {
+				public Id3 call() {
+					log.info("Creating tree " + index + " from random attributes");
+					return trainer.getTreeTrainedFromRandomAttributes(index);
+				}
+			}));
+		}
+		return futures;
+	}
+
+	/**
+	 * Wait for pending trees to finish training
+	 *
+	 * @param futures
+	 * @return trained trees in index order
+	 */
+	public static Id3[] collect(List<Future<Id3>> futures) {
+		Id3[] trees = new Id3[futures.size()];
+		for (int i = 0; i < trees.length; i++) {
+			try {
+				trees[i] = futures.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted training tree "
+						+ i, e);
+			} catch (ExecutionException e) {
+				log.error("Failed training tree " + i, e.getCause());
+				throw new IllegalStateException("Failed training tree " + i,
+						e.getCause());
+			}
+		}
+		return trees;
+	}
+
+	/**
+	 * Train the given number of trees concurrently
+	 *
+	 * @param trainer
+	 * @param count
+	 *            number of trees to train
+	 * @return trained trees in index order
+	 */
+	public Id3[] train(TreeTrainer trainer, int count) {
+		return collect(submit(trainer, count));
+	}
+
+	/**
+	 * Train the given number of trees concurrently and add them to the bag
+	 *
+	 * @param trainer
+	 * @param count
+	 *            number of trees to train
+	 * @param bagOfTrees
+	 */
+	public void train(TreeTrainer trainer, int count, BagOfTrees bagOfTrees) {
+		bagOfTrees.addTrees(train(trainer, count));
+	}
+
+	/**
+	 * Stop the training threads once submitted trees are trained
+	 */
+	public void shutdown() {
+		if (!shared) {
+			executor.shutdown();
+		}
+		samples.clear();
+	}
+}
@@ -0,0 +1,264 @@
+package decisiontree;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class BenchmarkProgram {
+	// internal constant for data set file path
+	private static String PATH_TO_FILE = "data/kddcup.data_10_percent.zip";
+	// default maximum bins per continuous column
+	private static int BIN_COUNT = 256;
+	// default number of trees trained on each path
+	private static int TREE_COUNT = 5;
+	// training rows the bag of trees trained from instances is grown on
+	private static int BAG_ROWS = 20000;
+
+	private ColumnarInstances data;
+	private int[] trainingRows;
+	private int[] testRows;
+
+	/**
+	 * Constructor for the benchmark given a data set file, holding out the
+	 * last tenth of the rows for testing
+	 *
+	 * @param file
+	 */
+	public BenchmarkProgram(String file) {
+		data = new DatasetLoader().load(new File(file));
+		int trainingSize = data.size() - data.size() / 10;
+		trainingRows = data.rows(0, trainingSize);
+		testRows = data.rows(trainingSize, data.size());
+		// sort the continuous columns up front, both paths share the order
+		for (int column = 0; column < data.schema().size(); column++) {
+			if (data.schema().isContinuous(column))
+				data.order(column);
+		}
+	}
+
+	/**
+	 * Train trees on all attributes and report the training time and
+	 * accuracy on the held out rows
+	 *
+	 * @param binCount
+	 *            maximum bins per continuous column, 0 for exact thresholds
+	 * @param treeCount
+	 * @return training time in milliseconds
+	 */
+	public long train(int binCount, int treeCount) {
+		return train(binCount, treeCount, null);
+	}
+
+	/**
+	 * Train trees on all attributes, growing each tree on the given fork
+	 * join pool, and report the training time and accuracy on the held out
+	 * rows
+	 *
+	 * @param binCount
+	 *            maximum bins per continuous column, 0 for exact thresholds
+	 * @param treeCount
+	 * @param pool
+	 *            pool growing each tree, or null to grow on this thread
+	 * @return training time in milliseconds
+	 */
+	public long train(int binCount, int treeCount, ForkJoinPool pool) {
+		long t = System.currentTimeMillis();
+		Id3[] trees = new Id3[treeCount];
+		for (int i = 0; i < treeCount; i++) {
+			trees[i] = new Id3(data, trainingRows);
+			trees[i].setOptions(new TreeOptions().withBinCount(binCount));
+			trees[i].setForkJoinPool(pool);
+			trees[i].traverse();
+		}
+		long elapsed = System.currentTimeMillis() - t;
+		int matches = 0;
+		for (int row : testRows) {
+			if (data.classifier(row).equals(trees[0].classify(data, row)))
+				matches++;
+		}
+		System.out.println((binCount > 0 ? binCount + " bins" : "exact")
+				+ (pool != null ? " on " + pool.getParallelism() + " threads"
+						: "") + ": " + treeCount + " trees in " + elapsed + " ms, accuracy "
+				+ ((double) matches / (double) testRows.length));
+		return elapsed;
+	}
+
+	/**
+	 * Classify the held out rows by walking the nodes of a tree and by its
+	 * compiled form, and report the time per row of each
+	 *
+	 * @param tree
+	 */
+	public void predict(Id3 tree) {
+		CompiledTree compiled = tree.compile();
+		int mismatches = 0;
+		long t = System.nanoTime();
+		for (int row : testRows) {
+			tree.classify(data, row);
+		}
+		long walked = System.nanoTime() - t;
+		for (int row : testRows) {
+			if (compiled.predict(data, row) != data.schema().classifiers()
+					.code(tree.classify(data, row)))
+				mismatches++;
+		}
+		t = System.nanoTime();
+		for (int row : testRows) {
+			compiled.predict(data, row);
+		}
+		long flat = System.nanoTime() - t;
+		System.out.println("Node walk " + (walked / testRows.length)
+				+ " ns per row, compiled " + (flat / testRows.length)
+				+ " ns per row, " + compiled.size() + " nodes, " + mismatches
+				+ " mismatches");
+	}
+
+	/**
+	 * Train a bag of trees from instances, each tree on its own random
+	 * subset of the attributes and so with a schema of its own, and report
+	 * the held out rows on which its forest compiled against the schema of
+	 * the data set votes differently from the trees
+	 *
+	 * @param treeCount
+	 */
+	public void predictBag(int treeCount) {
+		List<Instance> instances = new ArrayList<Instance>();
+		for (int i = 0; i < Math.min(trainingRows.length, BAG_ROWS); i++) {
+			instances.add(data.instance(trainingRows[i]));
+		}
+		BagOfTrees bag = new BagOfTrees();
+		bag.addTrees(new TreeTrainer(new Instances(instances))
+				.getTreesTrainedFromRandomAttributes(treeCount));
+		CompiledForest forest = bag.compile(data.schema());
+		int mismatches = 0;
+		for (int row : testRows) {
+			Instance instance = data.instance(row);
+			for (int i = 0; i < bag.count(); i++) {
+				if (forest.predict(i, data, row) != data.schema().classifiers()
+						.code(bag.get(i).classify(instance)))
+					mismatches++;
+			}
+		}
+		System.out.println("Bag of " + bag.count()
+				+ " trees on attribute subsets, " + mismatches
+				+ " compiled mismatches");
+	}
+
+	/**
+	 * Train trees on per-tree attribute subsets and on attributes sampled at
+	 * each node, with exact thresholds and on histograms, and check that no
+	 * node was split on a column holding a single value of its rows, which
+	 * would give it a lone child
+	 *
+	 * @param binCount
+	 *            maximum bins per continuous column for the histogram trees
+	 * @param treeCount
+	 *            number of trees trained on each path
+	 */
+	public void checkSingleValueSplits(int binCount, int treeCount) {
+		int nodes = 0;
+		int splits = 0;
+		for (boolean randomForest : new boolean[] { false, true }) {
+			for (int bins : new int[] { 0, binCount }) {
+				TreeTrainer trainer = new TreeTrainer(data, trainingRows);
+				trainer.setOptions(new TreeOptions().withRandomForest(
+						randomForest).withBinCount(bins));
+				for (Id3 tree : trainer
+						.getTreesTrainedFromRandomAttributes(treeCount)) {
+					nodes += tree.compile().size();
+					splits += countSingleValueSplits(tree.root());
+				}
+			}
+		}
+		System.out.println(nodes + " nodes, " + splits
+				+ " single value splits");
+		if (splits > 0) {
+			throw new IllegalStateException(splits
+					+ " nodes split on a column holding a single value");
+		}
+	}
+
+	/**
+	 * Check that default tree options grow unlimited, unpruned trees with
+	 * entropy scored splits of exact thresholds and no bootstrap, and that
+	 * changing a setting leaves the options it was changed on alone
+	 */
+	public static void checkDefaultOptions() {
+		TreeOptions options = new TreeOptions();
+		boolean defaults = options.splitCriterion() instanceof EntropyCriterion
+				&& !(options.splitCriterion() instanceof GainRatioCriterion)
+				&& !options.subsetSplits() && options.maxDepth() == 0
+				&& options.minSamplesSplit() == 2
+				&& options.minSamplesLeaf() == 1
+				&& options.minImpurityDecrease() == 0
+				&& !options.reducedErrorPruning()
+				&& options.costComplexityAlpha() == 0
+				&& options.binCount() == 0 && !options.randomForest()
+				&& !options.bootstrap();
+		TreeOptions changed = options.withMaxDepth(5).withBootstrap(true);
+		boolean unchanged = options.maxDepth() == 0 && !options.bootstrap()
+				&& changed.maxDepth() == 5 && changed.bootstrap();
+		System.out.println("Default tree options "
+				+ (defaults && unchanged ? "hold" : "differ"));
+		if (!defaults || !unchanged) {
+			throw new IllegalStateException(
+					"Tree options do not hold their defaults");
+		}
+	}
+
+	/**
+	 * Count the nodes of a subtree split with a lone child
+	 *
+	 * @param node
+	 * @return number of nodes with a single child
+	 */
+	private static int countSingleValueSplits(Id3Node node) {
+		if (node == null || node.children() == null)
+			return 0;
+		int count = node.children().size() == 1 ? 1 : 0;
+		for (Node child : node.children()) {
+			count += countSingleValueSplits((Id3Node) child);
+		}
+		return count;
+	}
+
+	/**
+	 * @param args
+	 *            data set file, bin count and tree count
+	 */
+	public static void main(String[] args) {
+		String file = args.length > 0 ? args[0] : PATH_TO_FILE;
+		int binCount = args.length > 1 ? Integer.parseInt(args[1]) : BIN_COUNT;
+		int treeCount = args.length > 2 ? Integer.parseInt(args[2])
+				: TREE_COUNT;
+
+		checkDefaultOptions();
+		BenchmarkProgram benchmark = new BenchmarkProgram(file);
+
+		long t = System.currentTimeMillis();
+		benchmark.data.bins(binCount);
+		System.out.println("Binned continuous columns in "
+				+ (System.currentTimeMillis() - t) + " ms");
+
+		long exact = benchmark.train(0, treeCount);
+		long binned = benchmark.train(binCount, treeCount);
+		System.out.println("Binned training speedup: "
+				+ ((double) exact / (double) Math.max(binned, 1)) + "x");
+
+		Id3 tree = new Id3(benchmark.data, benchmark.trainingRows);
+		tree.traverse();
+		benchmark.predict(tree);
+		benchmark.predictBag(treeCount);
+		benchmark.checkSingleValueSplits(binCount, treeCount);
+
+		ForkJoinPool pool = new ForkJoinPool();
+		long parallel = benchmark.train(0, treeCount, pool);
+		System.out.println("Parallel exact training speedup: "
+				+ ((double) exact / (double) Math.max(parallel, 1)) + "x");
+		parallel = benchmark.train(binCount, treeCount, pool);
+		System.out.println("Parallel binned training speedup: "
+				+ ((double) binned / (double) Math.max(parallel, 1)) + "x");
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,158 @@
+package decisiontree;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+public class BinnedColumns implements Serializable {
+	// largest bin count stored in a byte per row
+	private static final int BYTE_BINS = 256;
+	// largest bin count stored in a short per row
+	public static final int MAX_BINS = 65536;
+	private int maxBins;
+	// number of bins per continuous column
+	private int[] sizes;
+	// upper edge of every bin except the last, per continuous column
+	private double[][] edges;
+	// bin codes per continuous column, bytes when at most 256 bins
+	private byte[][] bytes;
+	private short[][] shorts;
+
+	/**
+	 * Constructor quantizing every continuous column of the given instances
+	 * into at most the given number of bins holding similar row counts
+	 *
+	 * @param data
+	 * @param maxBins
+	 */
+	public BinnedColumns(ColumnarInstances data, int maxBins) {
+		this.maxBins = Math.max(2, Math.min(maxBins, MAX_BINS));
+		Schema schema = data.schema();
+		sizes = new int[schema.size()];
+		edges = new double[schema.size()][];
+		bytes = new byte[schema.size()][];
+		shorts = new short[schema.size()][];
+		for (int column = 0; column < schema.size(); column++) {
+			if (schema.isContinuous(column)) {
+				quantize(data, column);
+			}
+		}
+	}
+
+	/**
+	 * Compute the bin edges of a continuous column from its sorted values
+	 * and assign the bin code of every row
+	 *
+	 * @param data
+	 * @param column
+	 */
+	private void quantize(ColumnarInstances data, int column) {
+		double[] values = data.doubles(column);
+		int[] order = data.order(column);
+		int n = order.length;
+		// count distinct values so small columns keep one bin per value
+		int distinct = n > 0 ? 1 : 0;
+		for (int i = 1; i < n; i++) {
+			if (values[order[i]] != values[order[i - 1]])
+				distinct++;
+		}
+		double[] edge = new double[Math.max(0, Math.min(distinct, maxBins) - 1)];
+		int count = 0;
+		for (int i = 0; i < n - 1 && count < edge.length; i++) {
+			double value = values[order[i]];
+			double next = values[order[i + 1]];
+			if (value == next)
+				continue;
+			// cut between distinct values once the bin holds its share of
+			// rows, or at every distinct value when there are few of them
+			if (distinct <= maxBins
+					|| (long) (i + 1) * maxBins >= (long) (count + 1) * n) {
+				double midpoint = (value + next) / 2;
+				edge[count++] = midpoint < next ? midpoint : value;
+			}
+		}
+		edge = Arrays.copyOf(edge, count);
+		edges[column] = edge;
+		sizes[column] = count + 1;
+		// assign codes walking the sorted rows through the edges
+		if (sizes[column] <= BYTE_BINS) {
+			bytes[column] = new byte[values.length];
+		} else {
+			shorts[column] = new short[values.length];
+		}
+		int bin = 0;
+		for (int i = 0; i < n; i++) {
+			while (bin < count && values[order[i]] > edge[bin])
+				bin++;
+			if (bytes[column] != null) {
+				bytes[column][order[i]] = (byte) bin;
+			} else {
+				shorts[column][order[i]] = (short) bin;
+			}
+		}
+	}
+
+	/**
+	 * Getter method for the maximum number of bins per column
+	 *
+	 * @return maximum number of bins
+	 */
+	public int maxBins() {
+		return maxBins;
+	}
+
+	/**
+	 * Getter method for the number of bins of a continuous column
+	 *
+	 * @param column
+	 * @return number of bins
+	 */
+	public int bins(int column) {
+		return sizes[column];
+	}
+
+	/**
+	 * Getter method for the upper edge of a bin, rows with values at or
+	 * below the edge fall in this bin or a lower one
+	 *
+	 * @param column
+	 * @param bin
+	 * @return upper edge value
+	 */
+	public double edge(int column, int bin) {
+		return edges[column][bin];
+	}
+
+	/**
+	 * Getter method for the byte bin codes of a column
+	 *
+	 * @param column
+	 * @return array of codes, or null when the column has more than 256 bins
+	 */
+	public byte[] bytes(int column) {
+		return bytes[column];
+	}
+
+	/**
+	 * Getter method for the short bin codes of a column
+	 *
+	 * @param column
+	 * @return array of codes, or null when the column has at most 256 bins
+	 */
+	public short[] shorts(int column) {
+		return shorts[column];
+	}
+
+	/**
+	 * Getter method for the bin code of a row
+	 *
+	 * @param column
+	 * @param row
+	 * @return bin code
+	 */
+	public int bin(int column, int row) {
+		if (bytes[column] != null) {
+			return bytes[column][row] & 0xff;
+		}
+		return shorts[column][row] & 0xffff;
+	}
+}
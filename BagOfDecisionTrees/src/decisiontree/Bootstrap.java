@@ -0,0 +1,95 @@
+package decisiontree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Bootstrap {
+	// number of times each row of the data set was drawn, indexed by row
+	private int[] weights;
+	// distinct rows drawn at least once, in population order
+	private int[] rows;
+	private int size;
+
+	/**
+	 * Constructor for sampling rows of a data set with the given number of
+	 * rows
+	 *
+	 * @param capacity
+	 *            number of rows in the data set
+	 */
+	public Bootstrap(int capacity) {
+		weights = new int[capacity];
+		rows = new int[0];
+	}
+
+	/**
+	 * Draw as many rows as the population holds, with replacement, counting
+	 * the draws of each row in its weight rather than copying it. The
+	 * weights of the previous sample are cleared first, so a bootstrap is
+	 * reused tree after tree without allocating
+	 *
+	 * @param population
+	 *            distinct rows to draw from
+	 * @param random
+	 */
+	public void sample(int[] population, Random random) {
+		// only the rows drawn last time hold a weight
+		for (int i = 0; i < size; i++) {
+			weights[rows[i]] = 0;
+		}
+		for (int i = 0; i < population.length; i++) {
+			weights[population[random.nextInt(population.length)]]++;
+		}
+		if (rows.length < population.length) {
+			rows = new int[population.length];
+		}
+		size = 0;
+		for (int row : population) {
+			if (weights[row] > 0)
+				rows[size++] = row;
+		}
+	}
+
+	/**
+	 * Getter method for the weights of the last sample
+	 *
+	 * @return number of draws indexed by row of the data set
+	 */
+	public int[] weights() {
+		return weights;
+	}
+
+	/**
+	 * Get the distinct rows of the last sample
+	 *
+	 * @return array of row indexes drawn at least once
+	 */
+	public int[] rows() {
+		return Arrays.copyOf(rows, size);
+	}
+
+	/**
+	 * Get the rows of the population left out of the last sample
+	 *
+	 * @param population
+	 * @return array of row indexes never drawn
+	 */
+	public int[] outOfBag(int[] population) {
+		int[] outOfBag = new int[population.length - size];
+		int k = 0;
+		for (int row : population) {
+			if (weights[row] == 0)
+				outOfBag[k++] = row;
+		}
+		return outOfBag;
+	}
+
+	/**
+	 * Getter method for the number of distinct rows in the last sample
+	 *
+	 * @return number of rows drawn at least once
+	 */
+	public int size() {
+		return size;
+	}
+}
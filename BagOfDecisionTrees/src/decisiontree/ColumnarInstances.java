@@ -0,0 +1,483 @@
+package decisiontree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class ColumnarInstances implements Serializable {
+	private static final Log log = LogFactory.getLog(ColumnarInstances.class);
+	// initial number of rows allocated for each column
+	private static final int DEFAULT_CAPACITY = 1024;
+	// attribute names, types and dictionaries
+	private Schema schema;
+	// continuous ranged values, one array per continuous column
+	private double[][] doubles;
+	// dictionary codes, one array per discrete column
+	private int[][] codes;
+	// classifier codes for each row
+	private int[] labels;
+	// number of rows in the set
+	private int size;
+	// rows sorted by value, computed on demand per continuous column
+	private transient int[][] orders;
+	// continuous columns quantized into bins, computed on demand
+	private transient BinnedColumns bins;
+
+	/**
+	 * Constructor for an empty set of instances with the given schema
+	 *
+	 * @param schema
+	 */
+	public ColumnarInstances(Schema schema) {
+		this(schema, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor for an empty set of instances with the given schema and
+	 * initial row capacity
+	 *
+	 * @param schema
+	 * @param capacity
+	 */
+	public ColumnarInstances(Schema schema, int capacity) {
+		allocate(schema, capacity);
+	}
+
+	/**
+	 * Constructor for columnar instances over already encoded columns
+	 *
+	 * @param schema
+	 * @param doubles
+	 *            values per continuous column, null for discrete columns
+	 * @param codes
+	 *            codes per discrete column, null for continuous columns
+	 * @param labels
+	 * @param size
+	 */
+	ColumnarInstances(Schema schema, double[][] doubles, int[][] codes,
+			int[] labels, int size) {
+		this.schema = schema;
+		this.doubles = doubles;
+		this.codes = codes;
+		this.labels = labels;
+		this.size = size;
+	}
+
+	/**
+	 * Allocate empty columns for the given schema and row capacity
+	 *
+	 * @param schema
+	 * @param capacity
+	 */
+	private void allocate(Schema schema, int capacity) {
+		this.schema = schema;
+		capacity = Math.max(capacity, 1);
+		doubles = new double[schema.size()][];
+		codes = new int[schema.size()][];
+		for (int i = 0; i < schema.size(); i++) {
+			if (schema.isContinuous(i)) {
+				doubles[i] = new double[capacity];
+			} else {
+				codes[i] = new int[capacity];
+			}
+		}
+		labels = new int[capacity];
+		size = 0;
+	}
+
+	/**
+	 * Constructor for columnar instances adapted from a set of instances
+	 *
+	 * @param instances
+	 */
+	public ColumnarInstances(Instances instances) {
+		this(new Schema(attributeNames(instances), "class"), instances.size());
+		for (Instance instance : instances.instances()) {
+			add(instance);
+		}
+	}
+
+	/**
+	 * Constructor for columnar instances streamed from a plain, gzip or zip
+	 * data set file
+	 *
+	 * @param f
+	 */
+	public ColumnarInstances(File f) {
+		load(f);
+	}
+
+	/**
+	 * Get the attribute names of a set of instances in the order they were
+	 * defined on the instance records, excluding filtered attributes
+	 *
+	 * @param instances
+	 * @return array of attribute names
+	 */
+	private static String[] attributeNames(Instances instances) {
+		List<String> names = new ArrayList<String>();
+		if (instances.size() > 0) {
+			for (String attribute : instances.instances().get(0).attributes()) {
+				if (instances.attributes().contains(attribute)) {
+					names.add(attribute);
+				}
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Add a row given an array of values in schema order and a classifier
+	 *
+	 * @param values
+	 * @param classifier
+	 */
+	public void add(String[] values, String classifier) {
+		ensureCapacity(size + 1);
+		for (int i = 0; i < schema.size(); i++) {
+			if (doubles[i] != null) {
+				doubles[i][size] = parseDouble(values[i], i);
+			} else {
+				codes[i][size] = schema.dictionary(i).add(values[i]);
+			}
+		}
+		labels[size] = schema.classifiers().add(classifier);
+		size++;
+		orders = null;
+		bins = null;
+	}
+
+	/**
+	 * Add a row given its values encoded in schema order, discrete columns
+	 * holding their dictionary codes, and its classifier code
+	 *
+	 * @param row
+	 * @param label
+	 */
+	public void add(double[] row, int label) {
+		ensureCapacity(size + 1);
+		for (int i = 0; i < schema.size(); i++) {
+			if (doubles[i] != null) {
+				doubles[i][size] = row[i];
+			} else {
+				codes[i][size] = (int) row[i];
+			}
+		}
+		labels[size] = label;
+		size++;
+		orders = null;
+		bins = null;
+	}
+
+	/**
+	 * Append the rows of another set of instances with the same attributes
+	 * but dictionaries of its own, recoding its discrete values and
+	 * classifiers into the dictionaries of this set
+	 *
+	 * @param other
+	 */
+	public void append(ColumnarInstances other) {
+		int rows = other.size();
+		ensureCapacity(size + rows);
+		for (int i = 0; i < schema.size(); i++) {
+			if (doubles[i] != null) {
+				System.arraycopy(other.doubles[i], 0, doubles[i], size, rows);
+			} else {
+				recode(other.codes[i], rows, other.schema.dictionary(i),
+						schema.dictionary(i), codes[i]);
+			}
+		}
+		recode(other.labels, rows, other.schema.classifiers(), schema
+				.classifiers(), labels);
+		size += rows;
+		orders = null;
+		bins = null;
+	}
+
+	/**
+	 * Copy codes from one dictionary to the end of this set in another,
+	 * adding values in their order in the source dictionary
+	 *
+	 * @param source
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @param target
+	 */
+	private void recode(int[] source, int rows, ValueDictionary from,
+			ValueDictionary to, int[] target) {
+		int[] map = new int[from.size()];
+		for (int code = 0; code < map.length; code++) {
+			map[code] = to.add(from.value(code));
+		}
+		for (int row = 0; row < rows; row++) {
+			target[size + row] = map[source[row]];
+		}
+	}
+
+	/**
+	 * Add a row given an instance
+	 *
+	 * @param instance
+	 */
+	public void add(Instance instance) {
+		String[] values = new String[schema.size()];
+		for (int i = 0; i < schema.size(); i++) {
+			values[i] = instance.value(schema.name(i));
+		}
+		add(values, instance.classifier());
+	}
+
+	/**
+	 * Parse a continuous value, using zero when the value is malformed
+	 *
+	 * @param value
+	 * @param column
+	 * @return double value
+	 */
+	private double parseDouble(String value, int column) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException nfe) {
+			log.info("Number format exception for value " + value
+					+ " on attribute " + schema.name(column));
+		} catch (NullPointerException npe) {
+			log.info("Missing value on attribute " + schema.name(column));
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Grow all columns to hold at least the given number of rows
+	 *
+	 * @param capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= labels.length)
+			return;
+		int grown = Math.max(capacity, labels.length + (labels.length >> 1));
+		resize(grown);
+	}
+
+	/**
+	 * Resize all columns to the given number of rows
+	 *
+	 * @param capacity
+	 */
+	private void resize(int capacity) {
+		for (int i = 0; i < schema.size(); i++) {
+			if (doubles[i] != null) {
+				doubles[i] = Arrays.copyOf(doubles[i], capacity);
+			} else {
+				codes[i] = Arrays.copyOf(codes[i], capacity);
+			}
+		}
+		labels = Arrays.copyOf(labels, capacity);
+	}
+
+	/**
+	 * Release the unused capacity of all columns
+	 */
+	public void trim() {
+		if (labels.length > size)
+			resize(size);
+	}
+
+	/**
+	 * Getter method for the schema
+	 *
+	 * @return schema
+	 */
+	public Schema schema() {
+		return schema;
+	}
+
+	/**
+	 * Getter method for the number of rows
+	 *
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Getter method for the continuous values of a column
+	 *
+	 * @param column
+	 * @return array of values, or null for discrete columns
+	 */
+	public double[] doubles(int column) {
+		return doubles[column];
+	}
+
+	/**
+	 * Getter method for the dictionary codes of a column
+	 *
+	 * @param column
+	 * @return array of codes, or null for continuous columns
+	 */
+	public int[] codes(int column) {
+		return codes[column];
+	}
+
+	/**
+	 * Getter method for the classifier codes of all rows
+	 *
+	 * @return array of classifier codes
+	 */
+	public int[] labels() {
+		return labels;
+	}
+
+	/**
+	 * Getter method for the classifier code of a row
+	 *
+	 * @param row
+	 * @return classifier code
+	 */
+	public int label(int row) {
+		return labels[row];
+	}
+
+	/**
+	 * Getter method for the classifier of a row
+	 *
+	 * @param row
+	 * @return classifier string
+	 */
+	public String classifier(int row) {
+		return schema.classifiers().value(labels[row]);
+	}
+
+	/**
+	 * Getter method for the string value of a row and column
+	 *
+	 * @param column
+	 * @param row
+	 * @return string value
+	 */
+	public String value(int column, int row) {
+		if (doubles[column] != null) {
+			return Double.toString(doubles[column][row]);
+		}
+		return schema.dictionary(column).value(codes[column][row]);
+	}
+
+	/**
+	 * Getter method for the indexes of all rows
+	 *
+	 * @return array of row indexes
+	 */
+	public int[] rows() {
+		return rows(0, size);
+	}
+
+	/**
+	 * Getter method for the indexes of a range of rows
+	 *
+	 * @param from
+	 *            first row, inclusive
+	 * @param to
+	 *            last row, exclusive
+	 * @return array of row indexes
+	 */
+	public int[] rows(int from, int to) {
+		int[] rows = new int[to - from];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = from + i;
+		}
+		return rows;
+	}
+
+	/**
+	 * Getter method for all rows sorted in ascending order of a continuous
+	 * column, sorted once and shared by every tree trained on this set
+	 *
+	 * @param column
+	 * @return array of row indexes
+	 */
+	public synchronized int[] order(int column) {
+		if (orders == null) {
+			orders = new int[schema.size()][];
+		}
+		if (orders[column] == null) {
+			int[] order = rows();
+			IndexSorter.sort(order, 0, size, doubles[column]);
+			orders[column] = order;
+		}
+		return orders[column];
+	}
+
+	/**
+	 * Getter method for the continuous columns quantized into at most the
+	 * given number of bins, computed once and shared by every tree trained
+	 * on this set
+	 *
+	 * @param maxBins
+	 * @return binned columns
+	 */
+	public synchronized BinnedColumns bins(int maxBins) {
+		if (bins == null || bins.maxBins() != maxBins) {
+			bins = new BinnedColumns(this, maxBins);
+		}
+		return bins;
+	}
+
+	/**
+	 * Create an instance for the given row
+	 *
+	 * @param row
+	 * @return instance
+	 */
+	public Instance instance(int row) {
+		String[] values = new String[schema.size()];
+		for (int i = 0; i < schema.size(); i++) {
+			values[i] = value(i, row);
+		}
+		return new Instance(schema.names(), values, classifier(row));
+	}
+
+	/**
+	 * Stream the records of a data set file into the columns, reading the
+	 * schema from the header record, without holding on to the raw records
+	 *
+	 * @param f
+	 */
+	private void load(File f) {
+		log.info("Loading data set");
+		InputStream in = null;
+		try {
+			in = DatasetReader.openStream(f);
+			RecordScanner scanner = new RecordScanner(in);
+			// parse header record
+			RecordParser p = new RecordParser(scanner.readLine());
+			if (p.values() == null) {
+				throw new IOException("Missing header record");
+			}
+			allocate(new Schema(p.values(), p.classifier()), DEFAULT_CAPACITY);
+			// parse remaining records straight from the bytes read
+			scanner.read(this);
+			trim();
+		} catch (IOException e) {
+			log.error("Unable to read data set from " + f, e);
+		} finally {
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+				System.out.println("IOException when closing file");
+			}
+		}
+		if (schema == null) {
+			allocate(new Schema(new String[0], null), 1);
+		}
+		log.info("Loaded " + size + " rows");
+	}
+}
@@ -0,0 +1,108 @@
+package decisiontree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class CompiledForest extends Forest {
+	// attribute names, types and dictionaries the rows are coded with
+	private Schema schema;
+	private CompiledTree[] trees;
+
+	/**
+	 * Constructor for a forest of trees compiled against the given schema
+	 *
+	 * @param schema
+	 * @param trees
+	 */
+	public CompiledForest(Schema schema, CompiledTree[] trees) {
+		this.schema = schema;
+		this.trees = trees;
+	}
+
+	/**
+	 * Constructor compiling a list of trained trees against the given schema
+	 *
+	 * @param schema
+	 * @param trees
+	 */
+	public CompiledForest(Schema schema, List<Id3> trees) {
+		this.schema = schema;
+		this.trees = new CompiledTree[trees.size()];
+		for (int i = 0; i < this.trees.length; i++) {
+			this.trees[i] = new CompiledTree(trees.get(i), schema);
+		}
+	}
+
+	/**
+	 * Read a forest written in the compact forest file format
+	 *
+	 * @param file
+	 * @return forest
+	 * @throws IOException
+	 */
+	public static CompiledForest read(File file) throws IOException {
+		return ForestFile.read(file);
+	}
+
+	/**
+	 * Write this forest in the compact forest file format
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		ForestFile.write(file, this);
+	}
+
+	/**
+	 * Getter method for the schema
+	 *
+	 * @return schema
+	 */
+	public Schema schema() {
+		return schema;
+	}
+
+	/**
+	 * Getter method for the compiled trees
+	 *
+	 * @return array of trees
+	 */
+	public CompiledTree[] trees() {
+		return trees;
+	}
+
+	/**
+	 * Getter method for the number of trees
+	 *
+	 * @return number of trees
+	 */
+	public int size() {
+		return trees.length;
+	}
+
+	/**
+	 * Predict the class id of a row of values in schema order with one tree
+	 *
+	 * @param tree
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(int tree, double[] row) {
+		return trees[tree].predict(row);
+	}
+
+	/**
+	 * Predict the class id of a row of columnar instances sharing the schema
+	 * of this forest with one tree
+	 *
+	 * @param tree
+	 * @param data
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(int tree, ColumnarInstances data, int row) {
+		return trees[tree].predict(data, row);
+	}
+}
@@ -0,0 +1,362 @@
+package decisiontree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class CompiledTree implements Serializable {
+	private static final Log log = LogFactory.getLog(CompiledTree.class);
+	// initial number of nodes allocated while compiling
+	private static final int DEFAULT_CAPACITY = 64;
+	// attribute names, types and dictionaries the rows are coded with
+	private Schema schema;
+	// number of nodes, numbered breadth first so siblings are adjacent
+	private int size;
+	// column tested by each node, -1 for leaves
+	private int[] feature;
+	// split value of continuous nodes
+	private double[] threshold;
+	// left child of continuous nodes with the right child following it,
+	// dispatch table offset of discrete nodes, or class id of leaves
+	private int[] next;
+	// number of value codes dispatched by discrete nodes, -1 when continuous
+	private int[] width;
+	// child of each value code per discrete node, followed by the child
+	// taken for values not seen during training
+	private int[] dispatch;
+	private int dispatchSize;
+	// schema of a tree trained with another schema than the one it is
+	// compiled against, only needed while compiling
+	private transient Schema trained;
+
+	/**
+	 * Constructor compiling a tree trained from columnar instances
+	 *
+	 * @param tree
+	 */
+	public CompiledTree(Id3 tree) {
+		this(tree, tree.schema());
+	}
+
+	/**
+	 * Constructor compiling a tree against the given schema. Trees trained
+	 * with another schema, such as trees trained from instances filtered to
+	 * a subset of the attributes, have their attributes and values looked up
+	 * by name
+	 *
+	 * @param tree
+	 * @param schema
+	 */
+	public CompiledTree(Id3 tree, Schema schema) {
+		if (schema == null) {
+			throw new IllegalArgumentException(
+					"A schema is required to compile trees trained from instances");
+		}
+		this.schema = schema;
+		trained = tree.schema() != schema ? tree.schema() : null;
+		feature = new int[DEFAULT_CAPACITY];
+		threshold = new double[DEFAULT_CAPACITY];
+		next = new int[DEFAULT_CAPACITY];
+		width = new int[DEFAULT_CAPACITY];
+		dispatch = new int[DEFAULT_CAPACITY];
+		// number nodes in the order they are queued, children together
+		List<Id3Node> nodes = new ArrayList<Id3Node>();
+		nodes.add(tree.root());
+		for (int i = 0; i < nodes.size(); i++) {
+			ensureCapacity(i + 1);
+			compile(nodes.get(i), i, nodes);
+		}
+		size = nodes.size();
+		trained = null;
+		// release the unused capacity
+		feature = Arrays.copyOf(feature, size);
+		threshold = Arrays.copyOf(threshold, size);
+		next = Arrays.copyOf(next, size);
+		width = Arrays.copyOf(width, size);
+		dispatch = Arrays.copyOf(dispatch, dispatchSize);
+	}
+
+	/**
+	 * Constructor for a tree read back from its flat arrays
+	 *
+	 * @param schema
+	 * @param feature
+	 * @param threshold
+	 * @param next
+	 * @param width
+	 * @param dispatch
+	 */
+	CompiledTree(Schema schema, int[] feature, double[] threshold, int[] next,
+			int[] width, int[] dispatch) {
+		this.schema = schema;
+		this.size = feature.length;
+		this.feature = feature;
+		this.threshold = threshold;
+		this.next = next;
+		this.width = width;
+		this.dispatch = dispatch;
+		this.dispatchSize = dispatch.length;
+	}
+
+	/**
+	 * Compile a node into the given slot, queueing its children
+	 *
+	 * @param node
+	 * @param index
+	 * @param nodes
+	 */
+	private void compile(Id3Node node, int index, List<Id3Node> nodes) {
+		int column = -1;
+		if (node != null && node.classifier() == null
+				&& node.attribute() != null) {
+			// columns of a tree trained with another schema do not apply
+			column = trained == null && node.column() >= 0 ? node.column()
+					: schema.index(node.attribute());
+			if (column < 0) {
+				log.error("Attribute " + node.attribute()
+						+ " is not in the schema, can not compile node");
+			}
+		}
+		if (column < 0 || node.children() == null
+				|| node.children().isEmpty()) {
+			// leaf node, or a node that can not classify
+			feature[index] = -1;
+			width[index] = -1;
+			next[index] = label(node);
+			return;
+		}
+		feature[index] = column;
+		if (schema.isContinuous(column)) {
+			Node left = node.left() != null ? node.left() : node.right();
+			Node right = node.right() != null ? node.right() : node.left();
+			threshold[index] = node.split();
+			width[index] = -1;
+			next[index] = nodes.size();
+			nodes.add((Id3Node) left);
+			nodes.add((Id3Node) right);
+			return;
+		}
+		ValueDictionary dictionary = schema.dictionary(column);
+		int codes = dictionary.size();
+		int offset = dispatchSize;
+		ensureDispatchCapacity(offset + codes + 1);
+		dispatchSize = offset + codes + 1;
+		// copy the node's own dispatch, unseen values falling back to the
+		// child of the majority value
+		int first = nodes.size();
+		ValueDictionary own = trained != null ? trained.dictionary(node
+				.column()) : null;
+		for (int code = 0; code < codes; code++) {
+			// translate codes of another schema through the value
+			int branch = own == null ? node.branch(code) : node.branch(own
+					.code(dictionary.value(code)));
+			dispatch[offset + code] = first + branch;
+		}
+		dispatch[offset + codes] = first + node.majorityBranch();
+		for (Node child : node.children()) {
+			nodes.add((Id3Node) child);
+		}
+		threshold[index] = Double.NaN;
+		width[index] = codes;
+		next[index] = offset;
+	}
+
+	/**
+	 * Get the class id of a leaf node
+	 *
+	 * @param node
+	 * @return class id, or -1 when the node has no classifier or one the
+	 *         schema does not hold
+	 */
+	private int label(Id3Node node) {
+		if (node == null || node.classifier() == null) {
+			return -1;
+		}
+		int label = schema.classifiers().code(node.classifier());
+		if (label < 0) {
+			// the schema is shared with the data set, so classifiers of a
+			// tree trained with another schema are not added to it
+			log.warn("Classifier " + node.classifier()
+					+ " is not in the schema, the leaf can not classify");
+		}
+		return label;
+	}
+
+	/**
+	 * Grow the node arrays to hold at least the given number of nodes
+	 *
+	 * @param capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= feature.length)
+			return;
+		int grown = Math.max(capacity, feature.length << 1);
+		feature = Arrays.copyOf(feature, grown);
+		threshold = Arrays.copyOf(threshold, grown);
+		next = Arrays.copyOf(next, grown);
+		width = Arrays.copyOf(width, grown);
+	}
+
+	/**
+	 * Grow the dispatch table to hold at least the given number of entries
+	 *
+	 * @param capacity
+	 */
+	private void ensureDispatchCapacity(int capacity) {
+		if (capacity <= dispatch.length)
+			return;
+		dispatch = Arrays.copyOf(dispatch, Math.max(capacity,
+				dispatch.length << 1));
+	}
+
+	/**
+	 * Predict the class id of a row of values in schema order, discrete
+	 * columns holding their dictionary codes and -1 for unseen values
+	 *
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(double[] row) {
+		int node = 0;
+		int column;
+		while ((column = feature[node]) >= 0) {
+			int codes = width[node];
+			if (codes < 0) {
+				node = row[column] <= threshold[node] ? next[node]
+						: next[node] + 1;
+			} else {
+				int code = (int) row[column];
+				if (code < 0 || code >= codes)
+					code = codes;
+				node = dispatch[next[node] + code];
+			}
+		}
+		return next[node];
+	}
+
+	/**
+	 * Predict the class id of a row of columnar instances sharing the schema
+	 * this tree was compiled with
+	 *
+	 * @param data
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(ColumnarInstances data, int row) {
+		int node = 0;
+		int column;
+		while ((column = feature[node]) >= 0) {
+			int codes = width[node];
+			if (codes < 0) {
+				node = data.doubles(column)[row] <= threshold[node] ? next[node]
+						: next[node] + 1;
+			} else {
+				int code = data.codes(column)[row];
+				if (code < 0 || code >= codes)
+					code = codes;
+				node = dispatch[next[node] + code];
+			}
+		}
+		return next[node];
+	}
+
+	/**
+	 * Classify a row of values in schema order
+	 *
+	 * @param row
+	 * @return classifier string
+	 */
+	public String classify(double[] row) {
+		return classifier(predict(row));
+	}
+
+	/**
+	 * Classify a row of columnar instances sharing the schema this tree was
+	 * compiled with
+	 *
+	 * @param data
+	 * @param row
+	 * @return classifier string
+	 */
+	public String classify(ColumnarInstances data, int row) {
+		return classifier(predict(data, row));
+	}
+
+	/**
+	 * Getter method for the classifier of a class id
+	 *
+	 * @param label
+	 * @return classifier string, empty when the class id is -1
+	 */
+	public String classifier(int label) {
+		return label >= 0 ? schema.classifiers().value(label) : "";
+	}
+
+	/**
+	 * Getter method for the schema
+	 *
+	 * @return schema
+	 */
+	public Schema schema() {
+		return schema;
+	}
+
+	/**
+	 * Getter method for the number of nodes
+	 *
+	 * @return number of nodes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Getter method for the column tested by each node
+	 *
+	 * @return array of columns, -1 for leaves
+	 */
+	int[] feature() {
+		return feature;
+	}
+
+	/**
+	 * Getter method for the split value of each node
+	 *
+	 * @return array of split values
+	 */
+	double[] threshold() {
+		return threshold;
+	}
+
+	/**
+	 * Getter method for the first child, dispatch table offset or class id
+	 * of each node
+	 *
+	 * @return array of node references
+	 */
+	int[] next() {
+		return next;
+	}
+
+	/**
+	 * Getter method for the number of value codes dispatched by each node
+	 *
+	 * @return array of widths, -1 for continuous nodes and leaves
+	 */
+	int[] width() {
+		return width;
+	}
+
+	/**
+	 * Getter method for the dispatch table of the discrete nodes
+	 *
+	 * @return array of child nodes
+	 */
+	int[] dispatch() {
+		return dispatch;
+	}
+}
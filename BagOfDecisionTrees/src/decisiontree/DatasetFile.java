@@ -0,0 +1,258 @@
+package decisiontree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Binary cache of encoded columnar instances, so a data set is parsed once
+ * and later runs map the columns straight back. All values are big endian:
+ *
+ * <pre>
+ * int    magic 'BOTD'
+ * int    version
+ *        schema as written by Schema.write
+ * int    row count n
+ *        padding to 8 bytes
+ *        per attribute in schema order, each padded to 8 bytes
+ *          double values[n] for continuous attributes
+ *          int    codes[n] for discrete attributes
+ * int    classifier codes[n]
+ * </pre>
+ */
+public class DatasetFile {
+	private static final Log log = LogFactory.getLog(DatasetFile.class);
+	// 'BOTD', marks a data set cache file
+	public static final int MAGIC = 0x424F5444;
+	// incremented whenever the layout changes
+	public static final int VERSION = 1;
+	// suffix added to the data set file name for its cache
+	public static final String EXTENSION = ".columns";
+	// bytes written to the file at a time
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Load a data set through its cache file next to it, parsing the data set
+	 * and writing the cache when the cache is missing or older than the data
+	 * set. Cache files may also be given directly
+	 *
+	 * @param f
+	 *            data set or cache file
+	 * @param threads
+	 *            number of threads parsing the data set
+	 * @return columnar instances
+	 */
+	public static ColumnarInstances load(File f, int threads) {
+		File cache = f.getName().endsWith(EXTENSION) ? f : new File(f
+				.getPath()
+				+ EXTENSION);
+		if (cache.exists()
+				&& (cache == f || cache.lastModified() >= f.lastModified())) {
+			try {
+				long t = System.currentTimeMillis();
+				ColumnarInstances data = read(cache);
+				log.info("Loaded " + data.size() + " rows from " + cache
+						+ " in " + (System.currentTimeMillis() - t) + " ms");
+				return data;
+			} catch (IOException e) {
+				log.warn("Unable to read cache " + cache + ", parsing " + f, e);
+			}
+		}
+		ColumnarInstances data = new DatasetLoader(threads).load(f);
+		try {
+			write(cache, data);
+			log.info("Wrote data set cache " + cache);
+		} catch (IOException e) {
+			log.warn("Unable to write data set cache " + cache, e);
+		}
+		return data;
+	}
+
+	/**
+	 * Write columnar instances to a cache file
+	 *
+	 * @param file
+	 * @param data
+	 * @throws IOException
+	 */
+	public static void write(File file, ColumnarInstances data)
+			throws IOException {
+		Schema schema = data.schema();
+		int size = data.size();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(MAGIC);
+		header.writeInt(VERSION);
+		schema.write(header);
+		header.writeInt(size);
+		while (bytes.size() % 8 != 0)
+			header.writeByte(0);
+		header.flush();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			for (int i = 0; i < schema.size(); i++) {
+				if (data.doubles(i) != null) {
+					put(channel, buffer, data.doubles(i), size);
+				} else {
+					put(channel, buffer, data.codes(i), size);
+				}
+			}
+			put(channel, buffer, data.labels(), size);
+			drain(channel, buffer);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read columnar instances from a cache file, mapping each column and
+	 * copying it onto the heap in bulk
+	 *
+	 * @param file
+	 * @return columnar instances
+	 * @throws IOException
+	 */
+	public static ColumnarInstances read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, Math.min(raf.length(), Integer.MAX_VALUE));
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+				throw new IOException(file + " is not a data set cache file");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported data set cache version "
+						+ version + " in " + file);
+			}
+			Schema schema = Schema.read(buffer);
+			int size = buffer.getInt();
+			long offset = align(buffer.position());
+			double[][] doubles = new double[schema.size()][];
+			int[][] codes = new int[schema.size()][];
+			for (int i = 0; i < schema.size(); i++) {
+				if (schema.isContinuous(i)) {
+					doubles[i] = new double[size];
+					map(channel, offset, 8L * size).asDoubleBuffer().get(
+							doubles[i]);
+					offset += align(8L * size);
+				} else {
+					codes[i] = new int[size];
+					map(channel, offset, 4L * size).asIntBuffer().get(codes[i]);
+					offset += align(4L * size);
+				}
+			}
+			int[] labels = new int[size];
+			map(channel, offset, 4L * size).asIntBuffer().get(labels);
+			return new ColumnarInstances(schema, doubles, codes, labels, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Map a section of the file read only
+	 *
+	 * @param channel
+	 * @param offset
+	 * @param length
+	 * @return mapped buffer
+	 * @throws IOException
+	 */
+	private static MappedByteBuffer map(FileChannel channel, long offset,
+			long length) throws IOException {
+		if (offset + length > channel.size()) {
+			throw new IOException("Data set cache file is truncated");
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+	}
+
+	/**
+	 * Write values through the buffer, padded to 8 bytes
+	 *
+	 * @param channel
+	 * @param buffer
+	 * @param values
+	 * @param size
+	 * @throws IOException
+	 */
+	private static void put(FileChannel channel, ByteBuffer buffer,
+			double[] values, int size) throws IOException {
+		for (int i = 0; i < size;) {
+			int n = Math.min(size - i, buffer.remaining() / 8);
+			if (n == 0) {
+				drain(channel, buffer);
+				continue;
+			}
+			buffer.asDoubleBuffer().put(values, i, n);
+			buffer.position(buffer.position() + 8 * n);
+			i += n;
+		}
+	}
+
+	/**
+	 * Write codes through the buffer, padded to 8 bytes
+	 *
+	 * @param channel
+	 * @param buffer
+	 * @param codes
+	 * @param size
+	 * @throws IOException
+	 */
+	private static void put(FileChannel channel, ByteBuffer buffer,
+			int[] codes, int size) throws IOException {
+		for (int i = 0; i < size;) {
+			int n = Math.min(size - i, buffer.remaining() / 4);
+			if (n == 0) {
+				drain(channel, buffer);
+				continue;
+			}
+			buffer.asIntBuffer().put(codes, i, n);
+			buffer.position(buffer.position() + 4 * n);
+			i += n;
+		}
+		if (size % 2 != 0) {
+			if (buffer.remaining() < 4)
+				drain(channel, buffer);
+			buffer.putInt(0);
+		}
+	}
+
+	/**
+	 * Write the buffered bytes to the channel
+	 *
+	 * @param channel
+	 * @param buffer
+	 * @throws IOException
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * Round a size up to the next 8 byte boundary
+	 *
+	 * @param size
+	 * @return aligned size
+	 */
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+}
@@ -0,0 +1,198 @@
+package decisiontree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class DatasetLoader {
+	private static final Log log = LogFactory.getLog(DatasetLoader.class);
+	// bytes of records parsed by each task
+	private static final int BLOCK_SIZE = 1 << 22;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private int threads;
+	private int blockSize;
+
+	/**
+	 * Default constructor, parsing on a thread per available core
+	 */
+	public DatasetLoader() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor for parsing on the given number of threads
+	 *
+	 * @param threads
+	 */
+	public DatasetLoader(int threads) {
+		this.threads = Math.max(1, threads);
+		this.blockSize = BLOCK_SIZE;
+	}
+
+	/**
+	 * Set the number of bytes of records parsed by each task
+	 *
+	 * @param blockSize
+	 */
+	public void setBlockSize(int blockSize) {
+		this.blockSize = Math.max(1, blockSize);
+	}
+
+	/**
+	 * Load a plain, gzip or zip data set file. The decompressed bytes are
+	 * cut into blocks at line boundaries and each block is parsed on its own
+	 * thread into columns with dictionaries of its own. Blocks are appended
+	 * in file order, so rows and dictionary codes come out the same as when
+	 * parsing on a single thread
+	 *
+	 * @param f
+	 * @return columnar instances
+	 */
+	public ColumnarInstances load(File f) {
+		log.info("Loading data set on " + threads + " threads");
+		ColumnarInstances data = null;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Deque<Future<ColumnarInstances>> pending = new ArrayDeque<Future<ColumnarInstances>>();
+		InputStream in = null;
+		try {
+			in = DatasetReader.openStream(f);
+			byte[] block = new byte[blockSize];
+			int length = 0;
+			boolean end = false;
+			while (!end) {
+				int n = in.read(block, length, block.length - length);
+				if (n < 0) {
+					end = true;
+				} else {
+					length += n;
+				}
+				if (!end && length < block.length)
+					continue;
+				// cut the block after its last complete line
+				int cut = end ? length : lastLine(block, length);
+				if (cut == 0 && data != null && end)
+					break;
+				if (cut == 0 && !end) {
+					// a single line fills the block
+					block = Arrays.copyOf(block, block.length << 1);
+					continue;
+				}
+				int start = 0;
+				if (data == null) {
+					// parse header record
+					int stop = 0;
+					while (stop < cut && block[stop] != '\n')
+						stop++;
+					RecordParser p = new RecordParser(new String(block, 0,
+							stop > 0 && block[stop - 1] == '\r' ? stop - 1
+									: stop, UTF8));
+					if (p.values() == null) {
+						throw new IOException("Missing header record");
+					}
+					data = new ColumnarInstances(new Schema(p.values(), p
+							.classifier()));
+					start = Math.min(stop + 1, cut);
+				}
+				pending.add(executor.submit(parse(block, start, cut, data
+						.schema())));
+				// carry the partial line over to a new block
+				byte[] next = new byte[block.length];
+				System.arraycopy(block, cut, next, 0, length - cut);
+				length -= cut;
+				block = next;
+				// append parsed blocks in order, bounding the blocks in memory
+				while (pending.size() > 2 * threads) {
+					data.append(collect(pending.poll()));
+				}
+			}
+			while (!pending.isEmpty()) {
+				data.append(collect(pending.poll()));
+			}
+			data.trim();
+		} catch (IOException e) {
+			log.error("Unable to read data set from " + f, e);
+		} finally {
+			executor.shutdownNow();
+			try {
+				if (in != null)
+					in.close();
+			} catch (IOException e) {
+				System.out.println("IOException when closing file");
+			}
+		}
+		if (data == null) {
+			data = new ColumnarInstances(new Schema(new String[0], null), 1);
+		}
+		log.info("Loaded " + data.size() + " rows");
+		return data;
+	}
+
+	/**
+	 * Get the end of the last complete line in a block
+	 *
+	 * @param block
+	 * @param length
+	 * @return position after the last line terminator, 0 when there is none
+	 */
+	private static int lastLine(byte[] block, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (block[i] == '\n')
+				return i + 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Create a task parsing the lines of a block range
+	 *
+	 * @param block
+	 * @param from
+	 * @param to
+	 * @param schema
+	 *            schema whose attribute names the block is parsed with
+	 * @return parse task
+	 */
+	private Callable<ColumnarInstances> parse(final byte[] block,
+			final int from, final int to, final Schema schema) {
+		return new Callable<ColumnarInstances>() {
+			public ColumnarInstances call() {
+				// estimate the rows in the block to size the columns once
+				ColumnarInstances chunk = new ColumnarInstances(new Schema(
+						schema.names(), schema.classifier()), (to - from) / 128);
+				new RecordScanner().parse(block, from, to, true, chunk);
+				return chunk;
+			}
+		};
+	}
+
+	/**
+	 * Wait for a block to be parsed
+	 *
+	 * @param future
+	 * @return parsed columns
+	 */
+	private static ColumnarInstances collect(Future<ColumnarInstances> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted parsing data set", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed parsing data set", e
+					.getCause());
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package decisiontree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class DatasetReader {
+	// bytes read from the file at a time
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Open a data set file for reading records, decompressing zip archives
+	 * and gzip files as they are read so nothing is unpacked to disk
+	 *
+	 * @param f
+	 *            plain text file, .gz file, or .zip archive whose first file
+	 *            entry holds the data set
+	 * @return reader positioned at the header record
+	 * @throws IOException
+	 */
+	public static BufferedReader open(File f) throws IOException {
+		return new BufferedReader(new InputStreamReader(openStream(f)),
+				BUFFER_SIZE);
+	}
+
+	/**
+	 * Open a data set file as a stream of decompressed bytes
+	 *
+	 * @param f
+	 * @return input stream
+	 * @throws IOException
+	 */
+	public static InputStream openStream(File f) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(f),
+				BUFFER_SIZE);
+		String name = f.getName().toLowerCase();
+		try {
+			if (name.endsWith(".gz")) {
+				return new GZIPInputStream(in, BUFFER_SIZE);
+			}
+			if (name.endsWith(".zip")) {
+				ZipInputStream zip = new ZipInputStream(in);
+				ZipEntry entry;
+				while ((entry = zip.getNextEntry()) != null) {
+					if (!entry.isDirectory()) {
+						return zip;
+					}
+				}
+				throw new FileNotFoundException("No data set entry in " + f);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+}
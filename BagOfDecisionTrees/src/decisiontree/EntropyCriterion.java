@@ -0,0 +1,71 @@
+package decisiontree;
+
+/**
+ * Information gain, scoring splits by their decrease in entropy
+ */
+public class EntropyCriterion implements SplitCriterion {
+	private static final double LOG2 = Math.log(2);
+	// n * log2(n) for the counts most nodes hold, so computing entropy
+	// takes no logarithm per class
+	private static final double[] NLOGN = new double[1 << 16];
+	static {
+		for (int n = 1; n < NLOGN.length; n++) {
+			NLOGN[n] = n * (Math.log(n) / LOG2);
+		}
+	}
+
+	/**
+	 * Compute the entropy of a set of rows
+	 * 
+	 * @param counts
+	 * @param total
+	 * @return entropy value
+	 */
+	public double impurity(int[] counts, int total) {
+		return entropy(counts, counts.length, total);
+	}
+
+	/**
+	 * Score a split by its information gain
+	 * 
+	 * @param decrease
+	 * @param sizes
+	 * @param branches
+	 * @param total
+	 * @return information gain
+	 */
+	public double gain(double decrease, int[] sizes, int branches, int total) {
+		return decrease;
+	}
+
+	/**
+	 * Compute the entropy of counts. -sum(p log2 p) with p = n / total is
+	 * (total log2 total - sum(n log2 n)) / total
+	 * 
+	 * @param counts
+	 * @param length
+	 *            number of counts used, the first entries of counts
+	 * @param total
+	 *            sum of the counts
+	 * @return entropy value
+	 */
+	static double entropy(int[] counts, int length, int total) {
+		if (total == 0)
+			return 0;
+		double sum = 0;
+		for (int i = 0; i < length; i++) {
+			sum += nlogn(counts[i]);
+		}
+		return (nlogn(total) - sum) / total;
+	}
+
+	/**
+	 * Compute n * log2(n), looking small counts up in a table
+	 * 
+	 * @param n
+	 * @return n * log2(n), 0 for n = 0
+	 */
+	private static double nlogn(int n) {
+		return n < NLOGN.length ? NLOGN[n] : n * (Math.log(n) / LOG2);
+	}
+}
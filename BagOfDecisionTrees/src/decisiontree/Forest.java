@@ -0,0 +1,218 @@
+package decisiontree;
+
+import java.util.Arrays;
+
+public abstract class Forest {
+	// rows voted on together, each tree walking the whole block in turn
+	private static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * Getter method for the schema the rows are coded with
+	 *
+	 * @return schema
+	 */
+	public abstract Schema schema();
+
+	/**
+	 * Getter method for the number of trees
+	 *
+	 * @return number of trees
+	 */
+	public abstract int size();
+
+	/**
+	 * Predict the class id of a row of values in schema order with one tree
+	 *
+	 * @param tree
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public abstract int predict(int tree, double[] row);
+
+	/**
+	 * Predict the class id of a row of columnar instances sharing the schema
+	 * of this forest with one tree
+	 *
+	 * @param tree
+	 * @param data
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public abstract int predict(int tree, ColumnarInstances data, int row);
+
+	/**
+	 * Vote on the most common classification for a row of values in schema
+	 * order
+	 *
+	 * @param row
+	 * @return classifier string, null when no tree could classify the row
+	 */
+	public String classify(double[] row) {
+		int label = classifyByVote(new double[][] { row })[0];
+		return label >= 0 ? schema().classifiers().value(label) : null;
+	}
+
+	/**
+	 * Vote on the most common class id for each of the given rows of
+	 * columnar instances, ties going to the lowest class id
+	 *
+	 * @param data
+	 * @param rows
+	 * @return array of class ids, -1 where no tree could classify the row
+	 */
+	public int[] classifyByVote(ColumnarInstances data, int[] rows) {
+		int classes = schema().classifiers().size();
+		int[] labels = new int[rows.length];
+		int[] votes = new int[Math.min(rows.length, BLOCK_SIZE) * classes];
+		for (int from = 0; from < rows.length; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, rows.length);
+			Arrays.fill(votes, 0);
+			vote(data, rows, from, to, classes, votes, 0);
+			elect(votes, classes, labels, from, to);
+		}
+		return labels;
+	}
+
+	/**
+	 * Vote on the most common class id for each of the given rows of values
+	 * in schema order, ties going to the lowest class id
+	 *
+	 * @param rows
+	 * @return array of class ids, -1 where no tree could classify the row
+	 */
+	public int[] classifyByVote(double[][] rows) {
+		int classes = schema().classifiers().size();
+		int[] labels = new int[rows.length];
+		int[] votes = new int[Math.min(rows.length, BLOCK_SIZE) * classes];
+		for (int from = 0; from < rows.length; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, rows.length);
+			Arrays.fill(votes, 0);
+			vote(rows, from, to, classes, votes, 0);
+			elect(votes, classes, labels, from, to);
+		}
+		return labels;
+	}
+
+	/**
+	 * Count the votes of every tree for each of the given rows of columnar
+	 * instances
+	 *
+	 * @param data
+	 * @param rows
+	 * @return votes of each row for each class id, indexed by row position
+	 *         times the number of classifiers in the schema plus class id
+	 */
+	public int[] votes(ColumnarInstances data, int[] rows) {
+		int classes = schema().classifiers().size();
+		int[] votes = new int[rows.length * classes];
+		for (int from = 0; from < rows.length; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, rows.length);
+			vote(data, rows, from, to, classes, votes, from * classes);
+		}
+		return votes;
+	}
+
+	/**
+	 * Count the votes of every tree for each of the given rows of values in
+	 * schema order
+	 *
+	 * @param rows
+	 * @return votes of each row for each class id, indexed by row position
+	 *         times the number of classifiers in the schema plus class id
+	 */
+	public int[] votes(double[][] rows) {
+		int classes = schema().classifiers().size();
+		int[] votes = new int[rows.length * classes];
+		for (int from = 0; from < rows.length; from += BLOCK_SIZE) {
+			int to = Math.min(from + BLOCK_SIZE, rows.length);
+			vote(rows, from, to, classes, votes, from * classes);
+		}
+		return votes;
+	}
+
+	/**
+	 * Add the votes of every tree for a block of rows of columnar instances,
+	 * walking each tree over the whole block so its nodes stay in cache
+	 *
+	 * @param data
+	 * @param rows
+	 * @param from
+	 *            first row position, inclusive
+	 * @param to
+	 *            last row position, exclusive
+	 * @param classes
+	 *            number of class ids
+	 * @param votes
+	 * @param offset
+	 *            position in the votes of the first row in the block
+	 */
+	private void vote(ColumnarInstances data, int[] rows, int from, int to,
+			int classes, int[] votes, int offset) {
+		for (int tree = 0; tree < size(); tree++) {
+			int position = offset;
+			for (int i = from; i < to; i++) {
+				int label = predict(tree, data, rows[i]);
+				if (label >= 0)
+					votes[position + label]++;
+				position += classes;
+			}
+		}
+	}
+
+	/**
+	 * Add the votes of every tree for a block of rows of values, walking
+	 * each tree over the whole block so its nodes stay in cache
+	 *
+	 * @param rows
+	 * @param from
+	 *            first row position, inclusive
+	 * @param to
+	 *            last row position, exclusive
+	 * @param classes
+	 *            number of class ids
+	 * @param votes
+	 * @param offset
+	 *            position in the votes of the first row in the block
+	 */
+	private void vote(double[][] rows, int from, int to, int classes,
+			int[] votes, int offset) {
+		for (int tree = 0; tree < size(); tree++) {
+			int position = offset;
+			for (int i = from; i < to; i++) {
+				int label = predict(tree, rows[i]);
+				if (label >= 0)
+					votes[position + label]++;
+				position += classes;
+			}
+		}
+	}
+
+	/**
+	 * Elect the class id with the most votes for each row of a block
+	 *
+	 * @param votes
+	 *            votes of the block, starting with the first row
+	 * @param classes
+	 *            number of class ids
+	 * @param labels
+	 * @param from
+	 *            first row position, inclusive
+	 * @param to
+	 *            last row position, exclusive
+	 */
+	private static void elect(int[] votes, int classes, int[] labels, int from, int to) {
+		int position = 0;
+		for (int i = from; i < to; i++) {
+			int label = -1;
+			int mostVotes = 0;
+			for (int c = 0; c < classes; c++) {
+				if (votes[position + c] > mostVotes) {
+					mostVotes = votes[position + c];
+					label = c;
+				}
+			}
+			labels[i] = label;
+			position += classes;
+		}
+	}
+}
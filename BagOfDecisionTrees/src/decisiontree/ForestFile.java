@@ -0,0 +1,237 @@
+package decisiontree;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compact binary file format for compiled forests. All values are big
+ * endian. The file starts with a header:
+ *
+ * <pre>
+ * int    magic 'BOTF'
+ * int    version
+ * int    attribute count, then per attribute
+ *          string name
+ *          int    value count, -1 for continuous attributes
+ *          string values in code order
+ * string classifier name
+ * int    class count, then strings in class id order
+ * int    tree count
+ *        padding to 8 bytes
+ * long   file offset of each tree
+ * </pre>
+ *
+ * Strings are an int byte length, -1 for null, followed by UTF-8 bytes, as
+ * written by Schema.write. Each tree starts on an 8 byte boundary:
+ *
+ * <pre>
+ * int    node count n
+ * int    dispatch table size d
+ * double threshold[n]
+ * int    feature[n]
+ * int    width[n]
+ * int    next[n]
+ * int    dispatch[d]
+ * </pre>
+ */
+public class ForestFile {
+	// 'BOTF', marks a forest file
+	public static final int MAGIC = 0x424F5446;
+	// incremented whenever the layout changes
+	public static final int VERSION = 1;
+
+	/**
+	 * Write a compiled forest to a file
+	 *
+	 * @param file
+	 * @param forest
+	 * @throws IOException
+	 */
+	public static void write(File file, CompiledForest forest)
+			throws IOException {
+		CompiledTree[] trees = forest.trees();
+		// write the header first to learn where the trees start
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream header = new DataOutputStream(bytes);
+		writeHeader(header, forest.schema(), trees.length);
+		header.flush();
+		long offset = align(bytes.size()) + 8L * trees.length;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			bytes.writeTo(out);
+			pad(out, bytes.size());
+			for (CompiledTree tree : trees) {
+				out.writeLong(offset);
+				offset += align(treeSize(tree));
+			}
+			for (CompiledTree tree : trees) {
+				writeTree(out, tree);
+				pad(out, treeSize(tree));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Read a compiled forest from a file, copying the node arrays of every
+	 * tree onto the heap
+	 *
+	 * @param file
+	 * @return forest
+	 * @throws IOException
+	 */
+	public static CompiledForest read(File file) throws IOException {
+		ByteBuffer buffer = map(file);
+		Schema schema = Schema.read(buffer);
+		CompiledTree[] trees = new CompiledTree[buffer.getInt()];
+		int offsets = align(buffer.position());
+		for (int i = 0; i < trees.length; i++) {
+			int offset = (int) buffer.getLong(offsets + 8 * i);
+			trees[i] = readTree(buffer, offset, schema);
+		}
+		return new CompiledForest(schema, trees);
+	}
+
+	/**
+	 * Map a forest file read only and check its magic number and version
+	 *
+	 * @param file
+	 * @return buffer positioned after the version
+	 * @throws IOException
+	 */
+	static MappedByteBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		try {
+			// the mapping stays valid once the channel is closed
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					raf.length());
+		} finally {
+			raf.close();
+		}
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+			throw new IOException(file + " is not a forest file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported forest file version " + version
+					+ " in " + file);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Write the magic number, version, schema and tree count
+	 *
+	 * @param out
+	 * @param schema
+	 * @param trees
+	 * @throws IOException
+	 */
+	private static void writeHeader(DataOutputStream out, Schema schema,
+			int trees) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		schema.write(out);
+		out.writeInt(trees);
+	}
+
+	/**
+	 * Write the node arrays of a tree
+	 *
+	 * @param out
+	 * @param tree
+	 * @throws IOException
+	 */
+	private static void writeTree(DataOutputStream out, CompiledTree tree)
+			throws IOException {
+		int[] dispatch = tree.dispatch();
+		out.writeInt(tree.size());
+		out.writeInt(dispatch.length);
+		for (double threshold : tree.threshold())
+			out.writeDouble(threshold);
+		for (int feature : tree.feature())
+			out.writeInt(feature);
+		for (int width : tree.width())
+			out.writeInt(width);
+		for (int next : tree.next())
+			out.writeInt(next);
+		for (int child : dispatch)
+			out.writeInt(child);
+	}
+
+	/**
+	 * Copy the node arrays of the tree at the given offset onto the heap
+	 *
+	 * @param buffer
+	 * @param offset
+	 * @param schema
+	 * @return compiled tree
+	 */
+	private static CompiledTree readTree(ByteBuffer buffer, int offset,
+			Schema schema) {
+		int size = buffer.getInt(offset);
+		int[] dispatch = new int[buffer.getInt(offset + 4)];
+		double[] threshold = new double[size];
+		int[] feature = new int[size];
+		int[] width = new int[size];
+		int[] next = new int[size];
+		buffer.position(offset + 8);
+		buffer.asDoubleBuffer().get(threshold);
+		buffer.position(buffer.position() + 8 * size);
+		buffer.asIntBuffer().get(feature);
+		buffer.position(buffer.position() + 4 * size);
+		buffer.asIntBuffer().get(width);
+		buffer.position(buffer.position() + 4 * size);
+		buffer.asIntBuffer().get(next);
+		buffer.position(buffer.position() + 4 * size);
+		buffer.asIntBuffer().get(dispatch);
+		return new CompiledTree(schema, feature, threshold, next, width,
+				dispatch);
+	}
+
+	/**
+	 * Get the number of bytes a tree takes in the file, before padding
+	 *
+	 * @param tree
+	 * @return size in bytes
+	 */
+	static long treeSize(CompiledTree tree) {
+		return 8L + 20L * tree.size() + 4L * tree.dispatch().length;
+	}
+
+	/**
+	 * Round a size up to the next 8 byte boundary
+	 *
+	 * @param size
+	 * @return aligned size
+	 */
+	static int align(long size) {
+		return (int) ((size + 7) & ~7L);
+	}
+
+	/**
+	 * Write zeros up to the next 8 byte boundary
+	 *
+	 * @param out
+	 * @param size
+	 *            bytes written since the last boundary
+	 * @throws IOException
+	 */
+	private static void pad(DataOutputStream out, long size)
+			throws IOException {
+		for (long i = size; i < align(size); i++) {
+			out.writeByte(0);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package decisiontree;
+
+/**
+ * Gain ratio, dividing the information gain of a split by the entropy of
+ * its branch sizes so attributes with many values are not favoured
+ */
+public class GainRatioCriterion extends EntropyCriterion {
+	/**
+	 * Score a split by its information gain over its split information
+	 * 
+	 * @param decrease
+	 * @param sizes
+	 * @param branches
+	 * @param total
+	 * @return gain ratio, 0 when a single branch holds every row
+	 */
+	@Override
+	public double gain(double decrease, int[] sizes, int branches, int total) {
+		double splitInfo = entropy(sizes, branches, total);
+		return splitInfo > 0 ? decrease / splitInfo : 0;
+	}
+}
@@ -0,0 +1,40 @@
+package decisiontree;
+
+/**
+ * Gini impurity, scoring splits by their decrease in the chance of
+ * mislabelling a row drawn at random. Takes no logarithms
+ */
+public class GiniCriterion implements SplitCriterion {
+	/**
+	 * Compute the Gini impurity of a set of rows, 1 - sum(p^2) with p = n /
+	 * total
+	 * 
+	 * @param counts
+	 * @param total
+	 * @return impurity value
+	 */
+	public double impurity(int[] counts, int total) {
+		if (total == 0)
+			return 0;
+		// sum squared counts exactly, so pure sets come out at exactly 0
+		long squares = 0;
+		for (int i = 0; i < counts.length; i++) {
+			squares += (long) counts[i] * counts[i];
+		}
+		long all = (long) total * total;
+		return (double) (all - squares) / (double) all;
+	}
+
+	/**
+	 * Score a split by its decrease in Gini impurity
+	 * 
+	 * @param decrease
+	 * @param sizes
+	 * @param branches
+	 * @param total
+	 * @return impurity decrease
+	 */
+	public double gain(double decrease, int[] sizes, int branches, int total) {
+		return decrease;
+	}
+}
@@ -3,13 +3,16 @@ package decisiontree;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
-import org.apache.commons.lang3.mutable.Mutable;
-import org.apache.commons.lang3.mutable.MutableInt;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -18,137 +21,794 @@ public class Id3 implements Serializable {
 
 	// compute log(2) constant to help performance
 	private static double log2 = Math.log(2);
+	// nodes with fewer rows are grown and scored on the current thread
+	private static final int FORK_THRESHOLD = 10000;
 
 	private Instances testInstances;
 	private transient List<Instance> testInstance;
 	private List<String> predicted;
-	private Instances instances;
 	private double accuracy;
 	private Id3Node root;
+	// columnar training data, released once the tree is grown
+	private transient ColumnarInstances data;
+	private transient int[] rows;
+	// number of times each row was drawn into the training sample, indexed
+	// by row, or null when every row counts once
+	private transient int[] weights;
+	// row index arrays presorted by each continuous column
+	private transient int[][] sorted;
+	// partition scratch over the row index range
+	private transient int[] buffer;
+	// continuous columns quantized into bins when training on histograms
+	private transient BinnedColumns bins;
+	// pool growing large subtrees and scoring attributes concurrently
+	private transient ForkJoinPool pool;
+	private int forkThreshold = FORK_THRESHOLD;
+	// attribute columns considered for splits
+	private int[] columns;
+	// attribute columns sampled afresh at each node, 0 to score them all
+	private int attributesPerNode;
+	// seed from which each node derives the generator of its sample
+	private long seed;
+	// settings the tree is grown with
+	private TreeOptions options = new TreeOptions();
+	// number of training rows reaching the root
+	private transient int rootSize;
+	private Schema schema;
 
 	/**
-	 * Constructor for id3
+	 * Constructor for id3, encoding the instances into columnar instances so
+	 * training counts dense class ids rather than classifier strings
 	 */
 	public Id3(Instances instances) {
-		this.instances = instances;
+		this(new ColumnarInstances(instances));
+	}
+
+	/**
+	 * Constructor for id3 trained on all rows of columnar instances
+	 * 
+	 * @param data
+	 */
+	public Id3(ColumnarInstances data) {
+		this(data, data.rows());
+	}
+
+	/**
+	 * Constructor for id3 trained on the given rows of columnar instances
+	 * 
+	 * @param data
+	 * @param rows
+	 */
+	public Id3(ColumnarInstances data, int[] rows) {
+		this.data = data;
+		// the tree partitions its own copy of the row indexes in place
+		this.rows = rows.clone();
+		this.schema = data.schema();
+		// consider all attribute columns by default
+		columns = new int[schema.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = i;
+		}
 		// create the root node
-		setRoot(new Id3Node(instances));
+		setRoot(new Id3Node());
+	}
+
+	/**
+	 * Constructor for id3 trained on a weighted sample of the rows of
+	 * columnar instances, such as a bootstrap sample. Each row counts as
+	 * many times as its weight in every class count, so drawn rows are never
+	 * copied
+	 * 
+	 * @param data
+	 * @param rows
+	 *            distinct rows of the sample
+	 * @param weights
+	 *            number of times each row was drawn, indexed by row
+	 */
+	public Id3(ColumnarInstances data, int[] rows, int[] weights) {
+		this(data, rows);
+		this.weights = weights;
 	}
 
 	/**
 	 * Traverse root node
 	 */
 	public void traverse() {
-		traverse(root());
+		if (data == null) {
+			throw new IllegalStateException("Tree has already been trained");
+		}
+		if (options.binCount() > 0) {
+			bins = data.bins(options.binCount());
+		} else {
+			presort();
+		}
+		GrowTask task = new GrowTask(root(), 0, rows.length, null);
+		if (pool != null) {
+			pool.invoke(task);
+		} else {
+			task.compute();
+		}
+		// release the training data once the tree is grown
+		data = null;
+		rows = null;
+		weights = null;
+		sorted = null;
+		buffer = null;
+		bins = null;
 	}
 
 	/**
-	 * Traverse the node tree
+	 * Traverse the node tree using a range of the shared row index array.
+	 * Child nodes own sub-ranges of their parent's range, partitioned in
+	 * place, so no row data is copied while the tree grows
 	 * 
-	 * @param instances
-	 * @param attribute
-	 * @param value
-	 * @return
+	 * @param node
+	 * @param from
+	 *            first position in the row index array, inclusive
+	 * @param to
+	 *            last position in the row index array, exclusive
 	 */
-	public void traverse(Id3Node node) {
-		log.info("Traversal node contains " + node.instances().size()
-				+ " instances");
-		// return if there are no instances
-		if (node.instances().size() == 0)
+	public void traverse(Id3Node node, int from, int to) {
+		log.info("Traversal node contains " + (to - from) + " rows");
+		// return if there are no rows
+		if (to == from)
 			return;
-		// compute purity for instance set
-		node.setPurity(node.instances().classifierPurity());
+		// the tested attributes are only needed while growing this node
+		BitSet tested = node.attributesTested();
+		node.setAttributesTested(null);
+		// compute purity for row set, counting weighted rows
+		int[] counts = computeClassifierCounts(from, to);
+		int size = total(counts);
+		node.setSize(size);
+		if (node == root())
+			rootSize = size;
+		int majority = majority(counts);
+		node.setPurity(((double) counts[majority] / (double) size) * 100);
 		log.info("Node purity " + node.purity());
-		// compute entropy for instance set
-		node.setEntropy(computeEntropy(node.instances()));
+		// compute entropy for row set
+		node.setEntropy(options.splitCriterion().impurity(counts, size));
 		log.info("Node entropy " + node.entropy());
+		String classifier = schema.classifiers().value(majority);
+		node.setMajorityClassifier(classifier);
+		node.setCounts(counts);
 		// no further traversal if entropy is 0
 		if (node.entropy() == 0) {
-			node.setClassifier(node.instances().majorityClassifier());
+			node.setClassifier(classifier);
 			log.info("Node classifier " + node.classifier() + ", entropy is 0");
 			return;
 		}
 		// no further traversal if all attributes tested
-		if (attributesExhausted(node.instances(), node.attributesTested())) {
-			node.setClassifier(node.instances().majorityClassifier());
+		if (tested.cardinality() >= columns.length) {
+			node.setClassifier(classifier);
 			log.info("Node classifier " + node.classifier()
 					+ ", attributes exhausted");
 			return;
 		}
+		// no further traversal if the node is too deep or too small
+		if (limitReached(node, size)) {
+			node.setClassifier(classifier);
+			log.info("Node classifier " + node.classifier()
+					+ ", growth limit reached");
+			return;
+		}
 		// compute attribute with maximum information gain
-		node.setAttribute(computeMaxInfoGain(node.instances(),
-				node.attributesTested()));
+		int[] candidates = candidates(from, to, node.depth(), tested);
+		int sampled = sampled(candidates);
+		Split split = computeMaxInfoGain(from, to, candidates, 0, sampled,
+				counts, node.entropy());
+		if (split == null && sampled < candidates.length) {
+			// none of the sampled attributes separates the rows, try the rest
+			split = computeMaxInfoGain(from, to, candidates, sampled,
+					candidates.length, counts, node.entropy());
+		}
+		// no further traversal if no attribute separates the rows enough
+		if (split == null || !worthSplitting(split, size)) {
+			node.setClassifier(classifier);
+			log.info("Node classifier " + node.classifier()
+					+ ", no attribute splits the rows");
+			return;
+		}
+		int column = split.column();
+		node.setColumn(column);
+		node.setAttribute(schema.name(column));
 		log.info("Node attribute with max info gain " + node.attribute());
-		// update attributes tested
-		List<String> attributesTested = node.attributesTested();
-		attributesTested.add(node.attribute());
-		// determine if this node has continuous ranged values
-		if (node.isContinuous()) {
-			/**
-			 * When the attribute selected for the node contains continuous
-			 * ranged values, a binary split algorithm is used to split the
-			 * values across left and right child nodes
-			 */
+		// attributes tested along the path to the child nodes. Continuous
+		// attributes may split again at other thresholds, and a subset split
+		// leaves the other values of its attribute to split on below
+		BitSet attributesTested = tested;
+		if (!node.isContinuous() && split.branches() == null) {
+			attributesTested = (BitSet) tested.clone();
+			attributesTested.set(column);
+		}
+		if (node.isContinuous() || split.branches() != null) {
 			log.info("Node will traverse a binary split");
-			// compute binary split
-			node.setSplit(computeBinarySplit(node.instances(), node.attribute()));
-			log.info("Node binary split value " + node.split());
-			// split instances using binary split value
-			Instances[] split = node.instances().split(node.attribute(),
-					node.split());
+			int mid = partition(from, to, node, split);
+			partitionSorted(from, to, new int[] { from, mid, to }, split,
+					attributesTested);
 			// create child nodes
-			node.setLeft(new Id3Node(split[0], attributesTested, node));
-			log.info("Left node contains " + split[0].size() + " instances");
-			node.setRight(new Id3Node(split[1], attributesTested, node));
-			log.info("Right node contains " + split[1].size() + " instances");
-
-			attributesTested = null;
-			testInstance = null;
-			testInstances = null;
-			split = null;
-
+			node.setLeft(new Id3Node(attributesTested, node));
+			node.setRight(new Id3Node(attributesTested, node));
+			if (split.branches() != null)
+				node.setBranches(split.branches());
 			// traverse child nodes
-			log.info("Traversing left node");
-			traverse((Id3Node) node.left());
-			log.info("Traversing right node");
-			traverse((Id3Node) node.right());
+			GrowTask task = fork((Id3Node) node.left(), from, mid, null);
+			if (task == null)
+				traverse((Id3Node) node.left(), from, mid);
+			traverse((Id3Node) node.right(), mid, to);
+			join(task);
 		} else {
-			/**
-			 * Otherwise, it's assumed that the attribute selected for the node
-			 * contains discrete values. For this case, the set of possible
-			 * values for the attribute will be used to split the instances
-			 * across multiple child nodes
-			 */
 			log.info("Node will traverse a discrete value split");
-			// split instances using discrete values
-			Instances[] split = node.instances().split(node.attribute());
-			// get attribute value set
-			Set<String> values = node.instances().values(node.attribute());
-			// convert value set to array list for indexing
-			List<String> indexed = new ArrayList<String>(values);
-			// create child node array
-			Id3Node[] children = new Id3Node[split.length];
-			// create child nodes
-			for (int i = 0; i < split.length; i++) {
-				// create the child node
-				children[i] = new Id3Node(split[i], attributesTested, node);
-				// set the attribute split value
-				children[i].setValue(indexed.get(i));
+			ValueDictionary dictionary = schema.dictionary(column);
+			// partition rows using discrete value codes
+			int[] bounds = partition(from, to, column);
+			partitionSorted(from, to, bounds, split, attributesTested);
+			// create child nodes for the values present in the row set
+			List<Node> children = new ArrayList<Node>();
+			int largest = -1;
+			for (int code = 0; code < bounds.length - 1; code++) {
+				if (bounds[code] == bounds[code + 1])
+					continue;
+				Id3Node child = new Id3Node(attributesTested, node);
+				child.setValue(dictionary.value(code));
+				child.setCode(code);
+				if (largest < 0
+						|| bounds[code + 1] - bounds[code] > bounds[largest + 1]
+								- bounds[largest]) {
+					largest = code;
+					node.setMajorityBranch(children.size());
+				}
+				children.add(child);
 			}
+			// add child nodes to parent
+			node.add(children);
+			node.setBranches(dictionary.size());
+			// traverse child nodes, forking the large ones
+			List<GrowTask> forked = new ArrayList<GrowTask>();
+			for (Node child : children) {
+				int code = ((Id3Node) child).code();
+				GrowTask task = fork((Id3Node) child, bounds[code],
+						bounds[code + 1], null);
+				if (task != null) {
+					forked.add(task);
+				} else {
+					traverse((Id3Node) child, bounds[code], bounds[code + 1]);
+				}
+			}
+			for (GrowTask task : forked) {
+				join(task);
+			}
+		}
+	}
+
+	/**
+	 * Task growing the subtree of a node from a range of the row index array
+	 */
+	private class GrowTask extends RecursiveAction {
+		private Id3Node node;
+		private int from;
+		private int to;
+		private int[][] histograms;
 
+		GrowTask(Id3Node node, int from, int to, int[][] histograms) {
+			this.node = node;
+			this.from = from;
+			this.to = to;
+			this.histograms = histograms;
+		}
+
+		@Override
+		protected void compute() {
+			if (bins != null) {
+				traverseBinned(node, from, to, histograms);
+			} else {
+				traverse(node, from, to);
+			}
+		}
+	}
+
+	/**
+	 * Task computing the best split of a node on one attribute column
+	 */
+	private class ScoreTask extends RecursiveTask<Split> {
+		private int from;
+		private int to;
+		private int column;
+		private int[] counts;
+		private double entropy;
+
+		ScoreTask(int from, int to, int column, int[] counts, double entropy) {
+			this.from = from;
+			this.to = to;
+			this.column = column;
+			this.counts = counts;
+			this.entropy = entropy;
+		}
+
+		@Override
+		protected Split compute() {
+			return computeSplit(from, to, column, counts, entropy);
+		}
+	}
+
+	/**
+	 * Task computing the class histogram of a node on one attribute column
+	 */
+	private class HistogramTask extends RecursiveTask<int[]> {
+		private int from;
+		private int to;
+		private int column;
+
+		HistogramTask(int from, int to, int column) {
+			this.from = from;
+			this.to = to;
+			this.column = column;
+		}
+
+		@Override
+		protected int[] compute() {
+			return computeHistogram(from, to, column);
+		}
+	}
+
+	/**
+	 * Determine whether work on a range of rows is large enough to be split
+	 * across the fork join pool
+	 * 
+	 * @param size
+	 *            number of rows
+	 * @return true if the work should be forked
+	 */
+	private boolean parallel(int size) {
+		return pool != null && size >= forkThreshold;
+	}
+
+	/**
+	 * Fork the growth of a child subtree when it is large enough
+	 * 
+	 * @param node
+	 * @param from
+	 * @param to
+	 * @param histograms
+	 * @return forked task, or null when the child should be grown on the
+	 *         current thread
+	 */
+	private GrowTask fork(Id3Node node, int from, int to, int[][] histograms) {
+		if (!parallel(to - from))
+			return null;
+		GrowTask task = new GrowTask(node, from, to, histograms);
+		task.fork();
+		return task;
+	}
+
+	/**
+	 * Wait for a forked subtree, when one was forked
+	 * 
+	 * @param task
+	 */
+	private static void join(GrowTask task) {
+		if (task != null)
+			task.join();
+	}
+
+	/**
+	 * Build the presorted row index arrays for the continuous attribute
+	 * columns considered for splits. Each array holds the same rows as the
+	 * row index array, in ascending order of the column, and is partitioned
+	 * stably alongside it so every node range stays sorted
+	 */
+	private void presort() {
+		sorted = new int[schema.size()][];
+		buffer = new int[rows.length];
+		// filtering the shared order of the whole set is linear, sorting
+		// this tree's rows is cheaper when they are a small sample
+		boolean filter = rows.length * (Math.log(rows.length + 1) / log2) >= data
+				.size();
+		BitSet member = null;
+		if (filter) {
+			member = new BitSet(data.size());
+			for (int i = 0; i < rows.length; i++) {
+				member.set(rows[i]);
+			}
+		}
+		for (int column : columns) {
+			if (!schema.isContinuous(column))
+				continue;
+			int[] order;
+			if (filter) {
+				order = new int[rows.length];
+				int k = 0;
+				for (int row : data.order(column)) {
+					if (member.get(row))
+						order[k++] = row;
+				}
+			} else {
+				order = rows.clone();
+				IndexSorter.sort(order, 0, order.length, data.doubles(column));
+			}
+			sorted[column] = order;
+		}
+	}
+
+	/**
+	 * Traverse the node tree using a range of the shared row index array and
+	 * per node class histograms over the binned columns. Only the smaller
+	 * children are scanned to build their histograms, the largest child
+	 * takes its parent's histograms less those of its siblings
+	 * 
+	 * @param node
+	 * @param from
+	 *            first position in the row index array, inclusive
+	 * @param to
+	 *            last position in the row index array, exclusive
+	 * @param histograms
+	 *            class histograms of the row set indexed by column, or null
+	 *            to scan the rows
+	 */
+	private void traverseBinned(Id3Node node, int from, int to,
+			int[][] histograms) {
+		log.info("Traversal node contains " + (to - from) + " rows");
+		// return if there are no rows
+		if (to == from)
+			return;
+		// the tested attributes are only needed while growing this node
+		BitSet tested = node.attributesTested();
+		node.setAttributesTested(null);
+		if (histograms == null) {
+			histograms = computeHistograms(from, to, tested);
+		}
+		// compute purity for row set, counting weighted rows
+		int[] counts = computeClassifierCounts(from, to, histograms);
+		int size = total(counts);
+		node.setSize(size);
+		if (node == root())
+			rootSize = size;
+		int majority = majority(counts);
+		node.setPurity(((double) counts[majority] / (double) size) * 100);
+		// compute entropy for row set
+		node.setEntropy(options.splitCriterion().impurity(counts, size));
+		String classifier = schema.classifiers().value(majority);
+		node.setMajorityClassifier(classifier);
+		node.setCounts(counts);
+		// no further traversal if entropy is 0, all attributes tested or the
+		// node is too deep or too small
+		if (node.entropy() == 0
+				|| tested.cardinality() >= columns.length
+				|| limitReached(node, size)) {
+			node.setClassifier(classifier);
+			return;
+		}
+		// compute attribute with maximum information gain, over the sampled
+		// attributes first and the rest when none of them splits the rows
+		int[] candidates = candidates(from, to, node.depth(), tested);
+		int sampled = sampled(candidates);
+		Split split = null;
+		for (int i = 0; i < candidates.length; i++) {
+			if (i == sampled && split != null)
+				break;
+			int column = candidates[i];
+			Split candidate = computeHistogramSplit(histograms[column],
+					column, counts, node.entropy());
+			if (candidate != null
+					&& (split == null || candidate.gain() > split.gain())) {
+				split = candidate;
+			}
+		}
+		// no further traversal if no attribute separates the rows enough
+		if (split == null || !worthSplitting(split, size)) {
+			node.setClassifier(classifier);
+			return;
+		}
+		int column = split.column();
+		node.setColumn(column);
+		node.setAttribute(schema.name(column));
+		log.info("Node attribute with max info gain " + node.attribute());
+		// attributes tested along the path to the child nodes. Continuous
+		// attributes may split again at other thresholds, and a subset split
+		// leaves the other values of its attribute to split on below
+		BitSet attributesTested = tested;
+		if (!node.isContinuous() && split.branches() == null) {
+			attributesTested = (BitSet) tested.clone();
+			attributesTested.set(column);
+			// the split column is not scored again below this node
+			histograms[column] = null;
+		}
+		if (node.isContinuous() || split.branches() != null) {
+			int mid = partition(from, to, node, split);
+			// create child nodes
+			Id3Node left = new Id3Node(attributesTested, node);
+			Id3Node right = new Id3Node(attributesTested, node);
+			node.setLeft(left);
+			node.setRight(right);
+			if (split.branches() != null)
+				node.setBranches(split.branches());
+			// scan the smaller child and derive the larger one
+			if (mid - from <= to - mid) {
+				int[][] smaller = subtractHistograms(histograms, from, mid,
+						attributesTested);
+				GrowTask task = fork(left, from, mid, smaller);
+				traverseBinned(right, mid, to, histograms);
+				if (task != null) {
+					task.join();
+				} else {
+					traverseBinned(left, from, mid, smaller);
+				}
+			} else {
+				int[][] smaller = subtractHistograms(histograms, mid, to,
+						attributesTested);
+				GrowTask task = fork(right, mid, to, smaller);
+				traverseBinned(left, from, mid, histograms);
+				if (task != null) {
+					task.join();
+				} else {
+					traverseBinned(right, mid, to, smaller);
+				}
+			}
+		} else {
+			ValueDictionary dictionary = schema.dictionary(column);
+			// partition rows using discrete value codes
+			int[] bounds = partition(from, to, column);
+			// create child nodes for the values present in the row set
+			List<Node> children = new ArrayList<Node>();
+			int largest = -1;
+			for (int code = 0; code < bounds.length - 1; code++) {
+				if (bounds[code] == bounds[code + 1])
+					continue;
+				Id3Node child = new Id3Node(attributesTested, node);
+				child.setValue(dictionary.value(code));
+				child.setCode(code);
+				if (largest < 0
+						|| bounds[code + 1] - bounds[code] > bounds[largest + 1]
+								- bounds[largest]) {
+					largest = code;
+					node.setMajorityBranch(children.size());
+				}
+				children.add(child);
+			}
 			// add child nodes to parent
 			node.add(children);
-			// traverse child nodes
-			for (int i = 0; i < split.length; i++) {
-				traverse(children[i]);
+			node.setBranches(dictionary.size());
+			// scan every child but the largest, which takes what remains,
+			// forking the large ones once their histograms are known
+			Id3Node remaining = null;
+			List<GrowTask> forked = new ArrayList<GrowTask>();
+			for (Node child : children) {
+				int code = ((Id3Node) child).code();
+				if (code == largest) {
+					remaining = (Id3Node) child;
+				} else if (parallel(bounds[code + 1] - bounds[code])) {
+					forked.add(fork((Id3Node) child, bounds[code],
+							bounds[code + 1], subtractHistograms(histograms,
+									bounds[code], bounds[code + 1],
+									attributesTested)));
+				}
+			}
+			for (Node child : children) {
+				int code = ((Id3Node) child).code();
+				if (code == largest || parallel(bounds[code + 1] - bounds[code]))
+					continue;
+				traverseBinned((Id3Node) child, bounds[code], bounds[code + 1],
+						subtractHistograms(histograms, bounds[code],
+								bounds[code + 1], attributesTested));
+			}
+			traverseBinned(remaining, bounds[largest], bounds[largest + 1],
+					histograms);
+			for (GrowTask task : forked) {
+				task.join();
+			}
+		}
+	}
+
+	/**
+	 * Compute class histograms for a range of the row index array, one for
+	 * each attribute column not yet tested. Continuous columns are counted
+	 * by bin and discrete columns by value code
+	 * 
+	 * @param from
+	 * @param to
+	 * @param attributesTested
+	 * @return histograms indexed by column, each holding the counts of bin b
+	 *         and classifier k at b * classifiers + k
+	 */
+	private int[][] computeHistograms(int from, int to,
+			BitSet attributesTested) {
+		int[][] histograms = new int[schema.size()][];
+		if (parallel(to - from)) {
+			// count each column on its own task over large ranges
+			List<HistogramTask> tasks = new ArrayList<HistogramTask>();
+			for (int column : columns) {
+				if (!attributesTested.get(column))
+					tasks.add(new HistogramTask(from, to, column));
+			}
+			ForkJoinTask.invokeAll(tasks);
+			for (HistogramTask task : tasks) {
+				histograms[task.column] = task.join();
+			}
+			return histograms;
+		}
+		for (int column : columns) {
+			if (!attributesTested.get(column))
+				histograms[column] = computeHistogram(from, to, column);
+		}
+		return histograms;
+	}
+
+	/**
+	 * Compute the class histogram for a range of the row index array and
+	 * attribute column
+	 * 
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @return histogram holding the counts of bin b and classifier k at b *
+	 *         classifiers + k
+	 */
+	private int[] computeHistogram(int from, int to, int column) {
+		int[] labels = data.labels();
+		int classes = schema.classifiers().size();
+		if (schema.isContinuous(column)) {
+			int[] histogram = new int[bins.bins(column) * classes];
+			byte[] bytes = bins.bytes(column);
+			if (bytes != null) {
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					histogram[(bytes[row] & 0xff) * classes + labels[row]] += weight(
+							row);
+				}
+			} else {
+				short[] shorts = bins.shorts(column);
+				for (int i = from; i < to; i++) {
+					int row = rows[i];
+					histogram[(shorts[row] & 0xffff) * classes
+							+ labels[row]] += weight(row);
+				}
+			}
+			return histogram;
+		} else {
+			int[] histogram = new int[schema.dictionary(column).size()
+					* classes];
+			int[] codes = data.codes(column);
+			for (int i = from; i < to; i++) {
+				int row = rows[i];
+				histogram[codes[row] * classes + labels[row]] += weight(row);
 			}
+			return histogram;
+		}
+	}
+
+	/**
+	 * Compute the class histograms of a child range and subtract them from
+	 * the histograms of its parent
+	 * 
+	 * @param histograms
+	 *            parent histograms, updated in place
+	 * @param from
+	 * @param to
+	 * @param attributesTested
+	 *            attributes tested along the path to the child
+	 * @return child histograms
+	 */
+	private int[][] subtractHistograms(int[][] histograms, int from, int to,
+			BitSet attributesTested) {
+		int[][] child = computeHistograms(from, to, attributesTested);
+		for (int column = 0; column < child.length; column++) {
+			if (child[column] == null)
+				continue;
+			int[] parent = histograms[column];
+			for (int i = 0; i < parent.length; i++) {
+				parent[i] -= child[column][i];
+			}
+		}
+		return child;
+	}
+
+	/**
+	 * Compute classifier counts for a range of the row index array, summing
+	 * any of its class histograms rather than scanning the rows
+	 * 
+	 * @param from
+	 * @param to
+	 * @param histograms
+	 * @return array of counts indexed by classifier code
+	 */
+	private int[] computeClassifierCounts(int from, int to, int[][] histograms) {
+		for (int[] histogram : histograms) {
+			if (histogram == null)
+				continue;
+			int[] counts = new int[schema.classifiers().size()];
+			for (int i = 0; i < histogram.length; i++) {
+				counts[i % counts.length] += histogram[i];
+			}
+			return counts;
+		}
+		return computeClassifierCounts(from, to);
+	}
 
-			attributesTested = null;
-			testInstance = null;
-			testInstances = null;
-			split = null;
-			System.gc();
+	/**
+	 * Compute the split with the maximum information gain for a column
+	 * given its class histogram. Continuous columns are swept bin by bin
+	 * for the best binary split on a bin edge, discrete columns split with a
+	 * branch for each value
+	 * 
+	 * @param histogram
+	 * @param column
+	 * @param counts
+	 *            classifier counts of the row set
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split on the column, or null when the rows fall in a single
+	 *         bin or hold a single value
+	 */
+	private Split computeHistogramSplit(int[] histogram, int column,
+			int[] counts, double entropy) {
+		SplitCriterion criterion = options.splitCriterion();
+		int minSamplesLeaf = options.minSamplesLeaf();
+		int classes = counts.length;
+		int bins = histogram.length / classes;
+		int size = 0;
+		for (int k = 0; k < classes; k++) {
+			size += counts[k];
+		}
+		int[] left = new int[classes];
+		if (!schema.isContinuous(column) && options.subsetSplits()) {
+			return computeSubsetSplit(histogram, column, counts, entropy);
+		}
+		if (!schema.isContinuous(column)) {
+			int[] totals = new int[bins];
+			double decrease = entropy;
+			for (int b = 0; b < bins; b++) {
+				for (int k = 0; k < classes; k++) {
+					left[k] = histogram[b * classes + k];
+					totals[b] += left[k];
+				}
+				if (totals[b] > 0) {
+					decrease -= ((double) totals[b] / (double) size)
+							* criterion.impurity(left, totals[b]);
+				}
+			}
+			// a single value would give the node a lone child
+			if (values(totals) < 2 || !fillsLeaves(totals))
+				return null;
+			return new Split(column, criterion.gain(decrease, totals, bins,
+					size), decrease, Double.NaN);
+		}
+		int[] right = counts.clone();
+		int[] sizes = new int[2];
+		int leftSize = 0;
+		int last = -1;
+		double maxInfoGain = Double.NEGATIVE_INFINITY;
+		double maxDecrease = 0;
+		for (int b = 0; b < bins - 1; b++) {
+			int total = 0;
+			for (int k = 0; k < classes; k++) {
+				int count = histogram[b * classes + k];
+				left[k] += count;
+				right[k] -= count;
+				total += count;
+			}
+			// only split after bins holding rows and before the last one
+			leftSize += total;
+			if (total == 0 || leftSize == size)
+				continue;
+			int rightSize = size - leftSize;
+			if (leftSize < minSamplesLeaf || rightSize < minSamplesLeaf)
+				continue;
+			sizes[0] = leftSize;
+			sizes[1] = rightSize;
+			double decrease = entropy - ((double) leftSize / (double) size)
+					* criterion.impurity(left, leftSize)
+					- ((double) rightSize / (double) size)
+					* criterion.impurity(right, rightSize);
+			double infoGain = criterion.gain(decrease, sizes, 2, size);
+			if (infoGain > maxInfoGain) {
+				maxInfoGain = infoGain;
+				maxDecrease = decrease;
+				last = b;
+			}
 		}
+		if (last < 0)
+			return null;
+		return new Split(column, maxInfoGain, maxDecrease, this.bins.edge(
+				column, last));
 	}
 
 	/**
@@ -170,25 +830,118 @@ public class Id3 implements Serializable {
 	}
 
 	/**
-	 * Getter method for accuracy
+	 * Compile this tree into flat arrays for classifying rows without walking
+	 * node objects
 	 * 
-	 * @return
+	 * @return compiled tree
 	 */
-	public double accuracy() {
-		return accuracy;
+	public CompiledTree compile() {
+		return new CompiledTree(this);
 	}
 
 	/**
-	 * Return true if the number of attributes tested is equal or greater than
-	 * the number of attributes in the instances key set
+	 * Getter method for the schema of the columnar training data
+	 * 
+	 * @return schema the tree was trained with
+	 */
+	public Schema schema() {
+		return schema;
+	}
+
+	/**
+	 * Getter method for the attribute columns considered for splits
+	 * 
+	 * @return array of column indexes
+	 */
+	public int[] columns() {
+		return columns;
+	}
+
+	/**
+	 * Restrict the attribute columns considered for splits
+	 * 
+	 * @param columns
+	 */
+	public void setColumns(int[] columns) {
+		this.columns = columns;
+	}
+
+	/**
+	 * Getter method for the number of attribute columns sampled at each node
+	 * 
+	 * @return number of columns, 0 when every column is scored
+	 */
+	public int attributesPerNode() {
+		return attributesPerNode;
+	}
+
+	/**
+	 * Score a fresh random sample of the given number of attribute columns
+	 * at every node, as random forests do, rather than every column. Nodes
+	 * where no sampled column separates the rows score the remaining ones
+	 * 
+	 * @param attributesPerNode
+	 *            number of columns, 0 to score every column
+	 */
+	public void setAttributesPerNode(int attributesPerNode) {
+		this.attributesPerNode = attributesPerNode;
+	}
+
+	/**
+	 * Set the seed of the attribute samples drawn at each node
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Getter method for the settings the tree is grown with
+	 * 
+	 * @return tree options
+	 */
+	public TreeOptions options() {
+		return options;
+	}
+
+	/**
+	 * Grow the tree with the given settings. Pruning settings are applied by
+	 * the caller once the tree is grown
+	 * 
+	 * @param options
+	 */
+	public void setOptions(TreeOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Grow large subtrees and score attributes of large nodes concurrently on
+	 * the given pool, or on the current thread when null
+	 * 
+	 * @param pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the number of rows below which nodes are grown and scored on the
+	 * current thread
+	 * 
+	 * @param forkThreshold
+	 */
+	public void setForkThreshold(int forkThreshold) {
+		this.forkThreshold = forkThreshold;
+	}
+
+	/**
+	 * Getter method for accuracy
 	 * 
-	 * @param instances
-	 * @param attributesTested
 	 * @return
 	 */
-	public boolean attributesExhausted(Instances instances,
-			List<String> attributesTested) {
-		return attributesTested.size() >= instances.attributesmap().size();
+	public double accuracy() {
+		return accuracy;
 	}
 
 	/**
@@ -216,13 +969,174 @@ public class Id3 implements Serializable {
 						+ node.purity());
 				node.setLeft(null);
 				node.setRight(null);
-				node.setClassifier(node.instances().majorityClassifier());
+				node.setClassifier(node.majorityClassifier());
 				log.info("Pruned node classifier " + node.classifier());
 			}
 		}
 		return;
 	}
 
+	/**
+	 * Prune by reduced error on rows held out of training. Working from the
+	 * leaves up, a node becomes a leaf whenever its majority classifier
+	 * misclassifies no more of the held out rows reaching it than its
+	 * subtree does
+	 * 
+	 * @param data
+	 *            columnar instances sharing the schema this tree was trained
+	 *            with
+	 * @param rows
+	 *            held out rows
+	 * @return number of held out rows misclassified by the pruned tree
+	 */
+	public int pruneReducedError(ColumnarInstances data, int[] rows) {
+		if (data.schema() != schema) {
+			throw new IllegalArgumentException(
+					"Trees can only be pruned on rows coded with their own schema");
+		}
+		int[] copy = rows.clone();
+		return pruneReducedError(root(), data, copy, 0, copy.length);
+	}
+
+	/**
+	 * Prune a subtree by reduced error on a range of held out rows, which is
+	 * partitioned in place between the child nodes the rows reach
+	 * 
+	 * @param node
+	 * @param data
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @return number of held out rows misclassified by the pruned subtree
+	 */
+	private int pruneReducedError(Id3Node node, ColumnarInstances data,
+			int[] rows, int from, int to) {
+		int[] labels = data.labels();
+		int label = schema.classifiers().code(node.majorityClassifier());
+		int errors = 0;
+		for (int i = from; i < to; i++) {
+			if (labels[rows[i]] != label)
+				errors++;
+		}
+		if (node.classifier() != null || node.children() == null)
+			return errors;
+		List<Node> children = node.children();
+		int[] bounds = partition(node, data, rows, from, to);
+		int subtree = 0;
+		for (int i = 0; i < children.size(); i++) {
+			subtree += pruneReducedError((Id3Node) children.get(i), data,
+					rows, bounds[i], bounds[i + 1]);
+		}
+		if (errors <= subtree) {
+			collapse(node);
+			return errors;
+		}
+		return subtree;
+	}
+
+	/**
+	 * Prune by cost complexity, keeping the smallest subtree minimizing its
+	 * training error rate plus alpha for each leaf. Working from the leaves
+	 * up, a node becomes a leaf whenever its subtree does not lower the
+	 * error rate by more than alpha for each leaf it adds. Uses the class
+	 * counts kept on each node, so no training rows are needed
+	 * 
+	 * @param alpha
+	 *            complexity cost of each leaf, as a fraction of the
+	 *            training rows
+	 */
+	public void pruneCostComplexity(double alpha) {
+		pruneCostComplexity(root(), alpha, root().size());
+	}
+
+	/**
+	 * Prune a subtree by cost complexity
+	 * 
+	 * @param node
+	 * @param alpha
+	 * @param total
+	 *            number of training rows reaching the root
+	 * @return error rate plus alpha for each leaf of the pruned subtree
+	 */
+	private double pruneCostComplexity(Id3Node node, double alpha, int total) {
+		int[] counts = node.counts();
+		// nodes without class counts are kept as they are
+		double leaf = counts == null ? Double.POSITIVE_INFINITY
+				: (double) (node.size() - counts[majority(counts)]) / total
+						+ alpha;
+		if (node.classifier() != null || node.children() == null)
+			return leaf;
+		double subtree = 0;
+		for (Node child : node.children()) {
+			subtree += pruneCostComplexity((Id3Node) child, alpha, total);
+		}
+		if (leaf <= subtree) {
+			collapse(node);
+			return leaf;
+		}
+		return subtree;
+	}
+
+	/**
+	 * Replace the subtree of a node by a leaf of its majority classifier
+	 * 
+	 * @param node
+	 */
+	private void collapse(Id3Node node) {
+		node.setClassifier(node.majorityClassifier());
+		node.removeChildren();
+	}
+
+	/**
+	 * Partition a range of rows in place between the children of a node,
+	 * routing rows the way they are classified
+	 * 
+	 * @param node
+	 * @param data
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @return range bounds indexed by child, the rows reaching child i are
+	 *         found between bounds[i] and bounds[i + 1]
+	 */
+	private static int[] partition(Id3Node node, ColumnarInstances data,
+			int[] rows, int from, int to) {
+		List<Node> children = node.children();
+		int[] branches = new int[to - from];
+		int[] bounds = new int[children.size() + 1];
+		for (int i = from; i < to; i++) {
+			int branch = branch(node, data, rows[i]);
+			branches[i - from] = branch;
+			bounds[branch + 1]++;
+		}
+		bounds[0] = from;
+		for (int i = 1; i < bounds.length; i++) {
+			bounds[i] += bounds[i - 1];
+		}
+		int[] next = Arrays.copyOf(bounds, children.size());
+		int[] partitioned = new int[to - from];
+		for (int i = from; i < to; i++) {
+			partitioned[next[branches[i - from]]++ - from] = rows[i];
+		}
+		System.arraycopy(partitioned, 0, rows, from, to - from);
+		return bounds;
+	}
+
+	/**
+	 * Get the child of a node a row of columnar instances is classified by
+	 * 
+	 * @param node
+	 * @param data
+	 * @param row
+	 * @return index of the child node
+	 */
+	private static int branch(Id3Node node, ColumnarInstances data, int row) {
+		if (node.isContinuous()) {
+			return data.doubles(node.column())[row] <= node.split() ? 0 : 1;
+		}
+		return node.branch(data.codes(node.column())[row]);
+	}
+
 	/**
 	 * Test instances on trained data
 	 * 
@@ -299,242 +1213,694 @@ public class Id3 implements Serializable {
 				}
 				return classify((Id3Node) node.right(), instance);
 			}
-		} else {
-			// get attribute values for the node
-			Set<String> values = node.instances().values(node.attribute());
-			// get current attribute value for the instance
-			String value = instance.value(node.attribute());
-			// determine majority attrinbute value when current is missing
-			if (!values.contains(value)) {
-				value = node.instances().majorityAttributeValue(
-						node.attribute());
-			}
-			// traverse discrete value child nodes to get classification
-			for (Node inode : node.children()) {
-				if (((Id3Node) inode).value().equals(value)) {
-					return classify((Id3Node) inode, instance);
-				}
+		}
+		// get current attribute value code for the instance, unseen values
+		// take the majority branch
+		int code = schema.dictionary(node.column()).code(
+				instance.value(node.attribute()));
+		return classify((Id3Node) node.children().get(node.branch(code)),
+				instance);
+	}
+
+	/**
+	 * Classify a row of columnar instances, by column and value code when
+	 * they share the schema this tree was trained with and by attribute name
+	 * otherwise
+	 * 
+	 * @param data
+	 * @param row
+	 * @return
+	 */
+	public String classify(ColumnarInstances data, int row) {
+		if (data.schema() != schema) {
+			// such as rows of all attributes for a tree trained from
+			// instances filtered to a subset, classify by attribute name
+			return classify(data.instance(row));
+		}
+		return classify(root(), data, row);
+	}
+
+	/**
+	 * Classify a row of columnar instances with given node
+	 * 
+	 * @param node
+	 * @param data
+	 * @param row
+	 * @return
+	 */
+	public String classify(Id3Node node, ColumnarInstances data, int row) {
+		// return node classification if defined
+		if (node.classifier() != null) {
+			return node.classifier();
+		}
+		if (node.column() < 0 || node.children() == null) {
+			log.error("Node has no attribute, can not classify row " + row);
+			return "";
+		}
+		// determine if the attribute on this node is continuous
+		if (node.isContinuous()) {
+			if (data.doubles(node.column())[row] <= node.split()) {
+				return classify((Id3Node) node.left(), data, row);
 			}
+			return classify((Id3Node) node.right(), data, row);
 		}
-		// this point should be unreachable, but return the majority
-		// classifier as a failsafe
-		return node.instances().majorityClassifier();
+		// get the child of the row's attribute value code, unseen values
+		// take the majority branch
+		int code = data.codes(node.column())[row];
+		return classify((Id3Node) node.children().get(node.branch(code)),
+				data, row);
 	}
 
 	/**
-	 * Compute classifier counts for each attribute value in the instance set
+	 * Compute classifier counts for a range of the row index array
 	 * 
-	 * @param instances
-	 * @param attribute
-	 * @return map of values to map of classifiers to counts
-	 */
-	public Map<String, HashMap<String, MutableInt>> computeClassifierCounts(
-			Instances instances, String attribute) {
-		// instantiate map of values to hashmap of classifiers to counts
-		Map<String, HashMap<String, MutableInt>> mappedCounts = new HashMap<String, HashMap<String, MutableInt>>();
-		// for each instance in the set
-		for (Instance instance : instances.instances()) {
-			// get the attribute value
-			String value = instance.value(attribute);
-			// retrieve the hashmap of classifiers to counts
-			HashMap<String, MutableInt> counts = mappedCounts.get(value);
-			// add the hashmap if not defined
-			if (counts == null) {
-				counts = new HashMap<String, MutableInt>();
-				mappedCounts.put(value, counts);
-			}
-			// retrieve classifier counter
-			MutableInt count = counts.get(instance.classifier());
-			if (count == null) {
-				// create classifier counter if not defined
-				counts.put(instance.classifier(), new MutableInt(1));
-			} else {
-				// increment classifier counter
-				count.increment();
+	 * @param from
+	 * @param to
+	 * @return array of counts indexed by classifier code
+	 */
+	private int[] computeClassifierCounts(int from, int to) {
+		int[] labels = data.labels();
+		int[] counts = new int[schema.classifiers().size()];
+		for (int i = from; i < to; i++) {
+			counts[labels[rows[i]]] += weight(rows[i]);
+		}
+		return counts;
+	}
+
+	/**
+	 * Get the number of times a row counts in the training sample
+	 * 
+	 * @param row
+	 * @return weight of the row, 1 when training unweighted
+	 */
+	private int weight(int row) {
+		return weights == null ? 1 : weights[row];
+	}
+
+	/**
+	 * Determine whether a node must become a leaf because it reached the
+	 * maximum depth or holds too few rows to split
+	 * 
+	 * @param node
+	 * @param size
+	 *            number of training rows reaching the node
+	 * @return true if the node must not be split
+	 */
+	private boolean limitReached(Id3Node node, int size) {
+		return (options.maxDepth() > 0 && node.depth() >= options.maxDepth())
+				|| size < options.minSamplesSplit();
+	}
+
+	/**
+	 * Determine whether the best split of a node decreases impurity enough,
+	 * weighting the decrease by the fraction of the training rows reaching
+	 * the node
+	 * 
+	 * @param split
+	 * @param size
+	 *            number of training rows reaching the node
+	 * @return true if the node should be split
+	 */
+	private boolean worthSplitting(Split split, int size) {
+		return options.minImpurityDecrease() <= 0
+				|| (double) size / (double) rootSize * split.decrease()
+						>= options.minImpurityDecrease();
+	}
+
+	/**
+	 * Determine whether a discrete split holds the minimum number of rows per
+	 * leaf in at least two branches. As in C4.5, rarer values still get a
+	 * branch of their own, otherwise a single rare value would rule out a
+	 * split on an attribute with many values
+	 * 
+	 * @param totals
+	 *            number of rows in each branch
+	 * @return true if the split may be made
+	 */
+	private boolean fillsLeaves(int[] totals) {
+		int minSamplesLeaf = options.minSamplesLeaf();
+		if (minSamplesLeaf <= 1)
+			return true;
+		int filled = 0;
+		for (int total : totals) {
+			if (total >= minSamplesLeaf && ++filled == 2)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Sum classifier counts
+	 * 
+	 * @param counts
+	 * @return total count
+	 */
+	private static int total(int[] counts) {
+		int total = 0;
+		for (int count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Count the values of a discrete column held by a row set
+	 * 
+	 * @param totals
+	 *            number of rows holding each value code
+	 * @return number of codes with rows
+	 */
+	private static int values(int[] totals) {
+		int values = 0;
+		for (int total : totals) {
+			if (total > 0)
+				values++;
+		}
+		return values;
+	}
+
+	/**
+	 * Get the index of the largest count
+	 * 
+	 * @param counts
+	 * @return index of the majority count
+	 */
+	private static int majority(int[] counts) {
+		int max = 0;
+		for (int i = 1; i < counts.length; i++) {
+			if (counts[i] > counts[max])
+				max = i;
+		}
+		return max;
+	}
+
+	/**
+	 * Get the attribute columns not yet tested that a node may split on. When
+	 * sampling attributes at each node the columns are shuffled with a
+	 * generator seeded by the node's range and depth, which no other node of
+	 * the tree shares, so the sample does not depend on the thread growing
+	 * the node
+	 * 
+	 * @param from
+	 * @param to
+	 * @param depth
+	 *            depth of the node
+	 * @param attributesTested
+	 * @return array of column indexes, the sample first
+	 */
+	private int[] candidates(int from, int to, int depth,
+			BitSet attributesTested) {
+		int[] candidates = new int[columns.length];
+		int count = 0;
+		for (int column : columns) {
+			if (!attributesTested.get(column))
+				candidates[count++] = column;
+		}
+		candidates = Arrays.copyOf(candidates, count);
+		int sampled = sampled(candidates);
+		if (sampled < count) {
+			// shuffle just the positions of the sample. The node depth is
+			// mixed in rather than the number of tested attributes, which
+			// repeated continuous and subset splits leave unchanged
+			long z = seed + ((((long) from << 32) + to) * 31 + depth)
+					* 0x9E3779B97F4A7C15L;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			Random random = new Random(z ^ (z >>> 31));
+			for (int i = 0; i < sampled; i++) {
+				int j = i + random.nextInt(count - i);
+				int column = candidates[i];
+				candidates[i] = candidates[j];
+				candidates[j] = column;
 			}
 		}
-		return mappedCounts;
+		return candidates;
 	}
 
 	/**
-	 * Compute entropy values for each attribute value in the set of instances
+	 * Get the number of candidate columns scored first at a node
 	 * 
-	 * @param instances
-	 * @return entropy value map
-	 */
-	private Map<String, Double> computeEntropies(Instances instances,
-			String attribute) {
-		// compute classifier counts for each attribute value
-		Map<String, HashMap<String, MutableInt>> mappedCounts = computeClassifierCounts(
-				instances, attribute);
-		// retrieve attribute value counts
-		Map<String, MutableInt> valueCounts = instances
-				.attributeValueCounts(attribute);
-		// instantiate map of values to entropies
-		Map<String, Double> entropies = new HashMap<String, Double>();
-
-		// for each mapped attribute value
-		for (String value : mappedCounts.keySet()) {
-			log.info("Compute entropy for attribute " + attribute + " value "
-					+ value);
-			// retrieve value count
-			double valueCount = valueCounts.get(value).doubleValue();
-			// retrieve classifier counts
-			Map<String, MutableInt> counts = mappedCounts.get(value);
-			// compute entropy across all instances
-			double entropy = 0;
-			for (String classifier : counts.keySet()) {
-				int count = counts.get(classifier).intValue();
-				if (count > 0) {
-					double probability = (double) count / valueCount;
-					entropy -= probability * (Math.log(probability) / log2);
-				}
-				log.info("Classifier " + classifier + " entropy " + entropy
-						+ " on probability " + count + " / " + valueCount);
+	 * @param candidates
+	 * @return size of the attribute sample
+	 */
+	private int sampled(int[] candidates) {
+		return attributesPerNode > 0 ? Math.min(attributesPerNode,
+				candidates.length) : candidates.length;
+	}
+
+	/**
+	 * Compute the split with the maximum information gain for a range of the
+	 * row index array over a range of candidate columns
+	 * 
+	 * @param from
+	 * @param to
+	 * @param candidates
+	 *            candidate column indexes
+	 * @param first
+	 *            first candidate scored, inclusive
+	 * @param last
+	 *            last candidate scored, exclusive
+	 * @param counts
+	 *            classifier counts of the row set
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split, or null when no attribute separates the rows
+	 */
+	private Split computeMaxInfoGain(int from, int to, int[] candidates,
+			int first, int last, int[] counts, double entropy) {
+		Split[] splits = new Split[last - first];
+		if (parallel(to - from)) {
+			// score each column on its own task over large ranges
+			List<ScoreTask> tasks = new ArrayList<ScoreTask>();
+			for (int i = first; i < last; i++) {
+				tasks.add(new ScoreTask(from, to, candidates[i], counts,
+						entropy));
+			}
+			ForkJoinTask.invokeAll(tasks);
+			for (int i = 0; i < splits.length; i++) {
+				splits[i] = tasks.get(i).join();
+			}
+		} else {
+			for (int i = 0; i < splits.length; i++) {
+				splits[i] = computeSplit(from, to, candidates[first + i],
+						counts, entropy);
+			}
+		}
+		// pick the first column with the maximum gain, as scored in order
+		Split max = null;
+		for (int i = 0; i < splits.length; i++) {
+			Split split = splits[i];
+			if (split == null)
+				continue;
+			if (log.isDebugEnabled())
+				log.debug("Info gain " + split.gain() + " on attribute "
+						+ schema.name(split.column()));
+			if (max == null || split.gain() > max.gain()) {
+				max = split;
 			}
-			entropies.put(value, entropy);
-			log.info("Entropy " + entropy + " on attribute " + attribute
-					+ " value " + value);
 		}
-		return entropies;
+		return max;
 	}
 
 	/**
-	 * Compute entropy for the set of instances
+	 * Compute the best split for a range of the row index array and attribute
+	 * column
 	 * 
-	 * @param instances
-	 * @return entropy value
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @param counts
+	 *            classifier counts of the row set
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split on the column, or null when the column does not separate
+	 *         the rows
+	 */
+	private Split computeSplit(int from, int to, int column, int[] counts,
+			double entropy) {
+		if (schema.isContinuous(column)) {
+			return computeBinarySplit(from, to, column, counts, entropy);
+		}
+		if (options.subsetSplits()) {
+			return computeSubsetSplit(computeHistogram(from, to, column),
+					column, counts, entropy);
+		}
+		return computeInfoGain(from, to, column, entropy);
+	}
+
+	/**
+	 * Compute information gain for a range of the row index array and
+	 * discrete attribute column, with a branch for each value
+	 * 
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split on the column, or null when the rows hold a single value
 	 */
-	private double computeEntropy(Instances instances) {
-		// initialize counters for classifiers
-		Map<String, MutableInt> counts = instances.classifierCounts();
-		// compute entropy across all instances
-		double entropy = 0;
-		log.info("Compute entropy for all instances");
-		for (String classifier : counts.keySet()) {
-			int count = counts.get(classifier).intValue();
-			if (count > 0) {
-				double probability = (double) count / (double) instances.size();
-				entropy -= probability * (Math.log(probability) / log2);
+	private Split computeInfoGain(int from, int to, int column, double entropy) {
+		SplitCriterion criterion = options.splitCriterion();
+		int[] labels = data.labels();
+		int[] codes = data.codes(column);
+		int[][] counts = new int[schema.dictionary(column).size()][schema
+				.classifiers().size()];
+		int[] totals = new int[counts.length];
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			int weight = weight(row);
+			counts[codes[row]][labels[row]] += weight;
+			totals[codes[row]] += weight;
+		}
+		// a single value would give the node a lone child
+		if (values(totals) < 2 || !fillsLeaves(totals))
+			return null;
+		int size = total(totals);
+		double decrease = entropy;
+		for (int code = 0; code < counts.length; code++) {
+			if (totals[code] > 0) {
+				decrease -= ((double) totals[code] / (double) size)
+						* criterion.impurity(counts[code], totals[code]);
 			}
-			log.info("Classifier " + classifier + " entropy " + entropy
-					+ " on probability " + count + " / " + instances.size());
 		}
-		log.info("Entropy " + entropy);
-		return entropy;
+		return new Split(column, criterion.gain(decrease, totals,
+				totals.length, size), decrease, Double.NaN);
 	}
 
 	/**
-	 * Compute the attribute with the maximum information gain
+	 * Compute the binary split of the values of a discrete attribute column
+	 * with the maximum information gain given its class histogram. The
+	 * values are ordered by the share of one class at a time among their
+	 * rows, and every cut of each order is scored, which for two classes
+	 * finds the best of all subsets. Each cut sends the values before it to
+	 * the left branch
 	 * 
-	 * @param instances
-	 * @param exclusion
-	 * @return
+	 * @param histogram
+	 *            class histogram holding the counts of code c and classifier
+	 *            k at c * classifiers + k
+	 * @param column
+	 * @param counts
+	 *            classifier counts of the row set
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split on the column, or null when the rows hold a single value
 	 */
-	private String computeMaxInfoGain(Instances instances,
-			List<String> attributesTested) {
-		// get list of attributes
-		Set<String> attributes = instances.attributes();
-		String[] attribute = attributes.toArray(new String[attributes.size()]);
-		// initialize
-		int maxIndex = -1;
-		double maxInfoGain = -1;
-		// compute maximum information gain across all attributes
-		for (int i = 0; i < attribute.length; i++) {
-			if (!attributesTested.contains(attribute[i])) {
-				log.info("Computing info gain for attribute " + attribute[i]);
-				double infoGain = computeInfoGain(instances, attribute[i]);
+	private Split computeSubsetSplit(int[] histogram, int column,
+			int[] counts, double entropy) {
+		SplitCriterion criterion = options.splitCriterion();
+		int minSamplesLeaf = options.minSamplesLeaf();
+		int classes = counts.length;
+		int[] totals = new int[histogram.length / classes];
+		for (int c = 0; c < totals.length; c++) {
+			for (int k = 0; k < classes; k++) {
+				totals[c] += histogram[c * classes + k];
+			}
+		}
+		int values = values(totals);
+		if (values < 2)
+			return null;
+		int size = total(counts);
+		// two values or two classes have a single order to try
+		int present = 0;
+		for (int count : counts) {
+			if (count > 0)
+				present++;
+		}
+		int orders = values == 2 || present == 2 ? 1 : present;
+		int[] order = new int[values];
+		double[] shares = new double[totals.length];
+		int[] left = new int[classes];
+		int[] right = new int[classes];
+		int[] sizes = new int[2];
+		double maxInfoGain = Double.NEGATIVE_INFINITY;
+		double maxDecrease = 0;
+		int[] best = null;
+		for (int k = 0; k < classes && orders > 0; k++) {
+			if (counts[k] == 0)
+				continue;
+			orders--;
+			// order the values by the share of class k, insertion sorting
+			// as attributes hold few values
+			int n = 0;
+			for (int c = 0; c < totals.length; c++) {
+				if (totals[c] == 0)
+					continue;
+				shares[c] = (double) histogram[c * classes + k]
+						/ (double) totals[c];
+				int i = n++;
+				while (i > 0 && shares[order[i - 1]] > shares[c]) {
+					order[i] = order[i - 1];
+					i--;
+				}
+				order[i] = c;
+			}
+			Arrays.fill(left, 0);
+			System.arraycopy(counts, 0, right, 0, classes);
+			int leftSize = 0;
+			for (int i = 0; i < values - 1; i++) {
+				int c = order[i];
+				for (int j = 0; j < classes; j++) {
+					int count = histogram[c * classes + j];
+					left[j] += count;
+					right[j] -= count;
+				}
+				leftSize += totals[c];
+				int rightSize = size - leftSize;
+				if (leftSize < minSamplesLeaf || rightSize < minSamplesLeaf)
+					continue;
+				sizes[0] = leftSize;
+				sizes[1] = rightSize;
+				double decrease = entropy - ((double) leftSize / (double) size)
+						* criterion.impurity(left, leftSize)
+						- ((double) rightSize / (double) size)
+						* criterion.impurity(right, rightSize);
+				double infoGain = criterion.gain(decrease, sizes, 2, size);
 				if (infoGain > maxInfoGain) {
 					maxInfoGain = infoGain;
-					maxIndex = i;
+					maxDecrease = decrease;
+					if (best == null)
+						best = new int[totals.length];
+					Arrays.fill(best, -1);
+					for (int j = 0; j < values; j++) {
+						best[order[j]] = j <= i ? 0 : 1;
+					}
 				}
 			}
 		}
-		if (maxIndex >= 0) {
-			log.info("Computed max info gain " + maxInfoGain + " on "
-					+ attribute[maxIndex]);
-		} else {
-			log.info("Computed max info gain error");
+		if (best == null)
+			return null;
+		return new Split(column, maxInfoGain, maxDecrease, best);
+	}
+
+	/**
+	 * Compute the binary split with the maximum information gain for a range
+	 * of the row index array and continuous attribute column. The presorted
+	 * rows are swept once, moving each row from the right to the left class
+	 * counts, and every boundary between distinct values is scored
+	 * 
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @param counts
+	 *            classifier counts of the row set
+	 * @param entropy
+	 *            impurity of the row set
+	 * @return split on the column, or null when all values are equal
+	 */
+	private Split computeBinarySplit(int from, int to, int column,
+			int[] counts, double entropy) {
+		SplitCriterion criterion = options.splitCriterion();
+		int minSamplesLeaf = options.minSamplesLeaf();
+		double[] values = data.doubles(column);
+		int[] labels = data.labels();
+		int[] order = sorted[column];
+		int size = total(counts);
+		int[] left = new int[counts.length];
+		int[] right = counts.clone();
+		int[] sizes = new int[2];
+		int leftSize = 0;
+		double maxInfoGain = Double.NEGATIVE_INFINITY;
+		double maxDecrease = 0;
+		double threshold = Double.NaN;
+		for (int i = from; i < to - 1; i++) {
+			int label = labels[order[i]];
+			int weight = weight(order[i]);
+			left[label] += weight;
+			right[label] -= weight;
+			leftSize += weight;
+			double value = values[order[i]];
+			double next = values[order[i + 1]];
+			// only split between distinct values
+			if (value == next)
+				continue;
+			int rightSize = size - leftSize;
+			if (leftSize < minSamplesLeaf || rightSize < minSamplesLeaf)
+				continue;
+			sizes[0] = leftSize;
+			sizes[1] = rightSize;
+			double decrease = entropy - ((double) leftSize / (double) size)
+					* criterion.impurity(left, leftSize)
+					- ((double) rightSize / (double) size)
+					* criterion.impurity(right, rightSize);
+			double infoGain = criterion.gain(decrease, sizes, 2, size);
+			if (infoGain > maxInfoGain) {
+				maxInfoGain = infoGain;
+				maxDecrease = decrease;
+				// split half way between the values, unless rounding would
+				// move the upper value to the left
+				threshold = (value + next) / 2;
+				if (threshold >= next)
+					threshold = value;
+			}
 		}
+		if (Double.isNaN(threshold))
+			return null;
+		if (log.isDebugEnabled())
+			log.debug("Computed binary split " + threshold + " for "
+					+ schema.name(column));
+		return new Split(column, maxInfoGain, maxDecrease, threshold);
+	}
 
-		// TODO: Check this logic, if the maxIndex was not identified, then
-		// split on the first attribute.
-		// This is a temp fix, the reason why this condition would occur needs
-		// to be looked at
-		return maxIndex >= 0 ? attribute[maxIndex] : attribute[0];
+	/**
+	 * Partition a range of the row index array in place for a binary split of
+	 * a node, on the split value of a continuous column or the subset of
+	 * value codes of a discrete one
+	 * 
+	 * @param from
+	 * @param to
+	 * @param node
+	 * @param split
+	 * @return position of the first row of the right branch
+	 */
+	private int partition(int from, int to, Id3Node node, Split split) {
+		if (split.branches() == null) {
+			node.setSplit(split.threshold());
+			log.info("Node binary split value " + node.split());
+			return partition(from, to, split.column(), node.split());
+		}
+		int mid = partition(from, to, split.column(), split.branches());
+		// values not seen in training follow the larger branch
+		node.setMajorityBranch(mid - from >= to - mid ? 0 : 1);
+		return mid;
 	}
 
 	/**
-	 * Compute information gain for the set of instances and given attribute
+	 * Partition a range of the row index array in place given a continuous
+	 * attribute column and split value
 	 * 
-	 * @param instances
-	 * @param attribute
-	 * @return
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @param value
+	 * @return position of the first row above the split value
 	 */
-	private double computeInfoGain(Instances instances, String attribute) {
-		// compute entropies
-		Map<String, Double> entropies = computeEntropies(instances, attribute);
-		// retrieve attribute counts
-		Map<String, MutableInt> counts = instances
-				.attributeValueCounts(attribute);
-		// compute entropy of instance set
-		double infoGain = computeEntropy(instances);
-		// compute information gain across all attribute values
-		for (String value : entropies.keySet()) {
-			int count = counts.get(value).intValue();
-			if (count > 0) {
-				infoGain -= ((double) count / (double) instances.size())
-						* entropies.get(value);
+	private int partition(int from, int to, int column, double value) {
+		double[] values = data.doubles(column);
+		int i = from;
+		int j = to - 1;
+		while (i <= j) {
+			if (values[rows[i]] <= value) {
+				i++;
+			} else {
+				int t = rows[i];
+				rows[i] = rows[j];
+				rows[j--] = t;
 			}
-			log.info("Info gain " + infoGain + " on " + count + " / "
-					+ instances.size() + " entropy " + entropies.get(value));
 		}
-		log.info("Computed info gain " + infoGain + " on attribute "
-				+ attribute);
-		return infoGain;
+		return i;
 	}
 
 	/**
-	 * Compute binary split value for the set of instances and given attribute
+	 * Partition a range of the row index array in place given a discrete
+	 * attribute column and the branch of each value code
 	 * 
-	 * @param instances
-	 * @param attribute
-	 */
-	private double computeBinarySplit(Instances instances, String attribute) {
-		// get list of sorted values
-		List<Double> values = Arrays.asList(instances.valuesDouble(attribute)
-				.toArray(new Double[0]));
-		Collections.sort(values);
-		log.info("Compute binary split on attribute " + attribute + " with "
-				+ values.size() + " values");
-		// initialize values
-		int pass = 0;
-		double purity = 0;
-		double min = values.get(0);
-		double max = values.get(values.size() - 1);
-		double midpoint = (min + max) / 2;
-		log.info("Starting split evaluation min " + min + " max " + max
-				+ " split " + midpoint);
-		// loop until purity is 80% or 3 passes completed
-		while (purity < 80 && pass++ < 3) {
-			Instances[] split = instances.split(attribute, midpoint);
-			double leftPurity = split[0].classifierPurity();
-			double rightPurity = split[1].classifierPurity();
-			log.info("Left split purity " + leftPurity + " right purity "
-					+ rightPurity);
-			if (leftPurity > rightPurity) {
-				purity = leftPurity;
-				max = midpoint;
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @param branches
+	 *            branch of each value code, 0 for the left branch
+	 * @return position of the first row of the right branch
+	 */
+	private int partition(int from, int to, int column, int[] branches) {
+		int[] codes = data.codes(column);
+		int i = from;
+		int j = to - 1;
+		while (i <= j) {
+			if (branches[codes[rows[i]]] == 0) {
+				i++;
 			} else {
-				purity = rightPurity;
-				min = midpoint;
+				int t = rows[i];
+				rows[i] = rows[j];
+				rows[j--] = t;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Partition a range of the row index array in place given a discrete
+	 * attribute column, grouping rows by value code
+	 * 
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @return range bounds indexed by value code, the rows with code c are
+	 *         found between bounds[c] and bounds[c + 1]
+	 */
+	private int[] partition(int from, int to, int column) {
+		int[] codes = data.codes(column);
+		int[] bounds = new int[schema.dictionary(column).size() + 1];
+		for (int i = from; i < to; i++) {
+			bounds[codes[rows[i]] + 1]++;
+		}
+		bounds[0] = from;
+		for (int code = 1; code < bounds.length; code++) {
+			bounds[code] += bounds[code - 1];
+		}
+		// move each row into its bucket by swapping
+		int[] next = Arrays.copyOf(bounds, bounds.length - 1);
+		for (int code = 0; code < next.length; code++) {
+			while (next[code] < bounds[code + 1]) {
+				int row = rows[next[code]];
+				int target = codes[row];
+				if (target == code) {
+					next[code]++;
+				} else {
+					rows[next[code]] = rows[next[target]];
+					rows[next[target]++] = row;
+				}
 			}
-			midpoint = (min + max) / 2;
-			log.info("Split pass " + pass + " min " + min + " max " + max
-					+ " split " + midpoint);
 		}
-		log.info("Computed binary split " + midpoint + " for " + attribute);
-		return midpoint;
+		return bounds;
+	}
+
+	/**
+	 * Stably partition the presorted rows of a node range into the ranges of
+	 * its branches, keeping each child range in ascending value order.
+	 * Columns already tested on the path are skipped as no descendant reads
+	 * them
+	 * 
+	 * @param from
+	 * @param to
+	 * @param bounds
+	 *            range bounds indexed by branch, or by value code for a
+	 *            multiway split
+	 * @param split
+	 *            split the node range was partitioned on, the branch of each
+	 *            row is read back from its column
+	 * @param attributesTested
+	 */
+	private void partitionSorted(int from, int to, int[] bounds, Split split,
+			BitSet attributesTested) {
+		// branches are recomputed per row rather than recorded in an array
+		// sized to the whole data set, which every tree would allocate
+		boolean continuous = schema.isContinuous(split.column());
+		double[] values = continuous ? data.doubles(split.column()) : null;
+		int[] codes = continuous ? null : data.codes(split.column());
+		double threshold = split.threshold();
+		int[] branches = split.branches();
+		for (int column = 0; column < sorted.length; column++) {
+			int[] order = sorted[column];
+			if (order == null
+					|| attributesTested.get(column))
+				continue;
+			// the buffer is used over the same range, so concurrent nodes
+			// never overlap
+			int[] next = Arrays.copyOf(bounds, bounds.length - 1);
+			for (int i = from; i < to; i++) {
+				int row = order[i];
+				int branch;
+				if (continuous) {
+					branch = values[row] <= threshold ? 0 : 1;
+				} else if (branches != null) {
+					branch = branches[codes[row]];
+				} else {
+					branch = codes[row];
+				}
+				buffer[next[branch]++] = row;
+			}
+			System.arraycopy(buffer, from, order, from, to - from);
+		}
 	}
 
 	/**
@@ -574,14 +1940,14 @@ public class Id3 implements Serializable {
 		}
 	}
 
+	/**
+	 * Release the instances and predictions of the last test. Trained nodes
+	 * only hold their split, majority classifier, majority branch and class
+	 * counts, and the training data is released once the tree is grown
+	 */
 	public void dropInstances() {
-		//this.instances = null;
-		this.testInstance = null;
-		this.testInstances = null;
-		//removeAllInstances();
-	}
-
-	public void removeAllInstances() {
-		root.clearInstances(root);
+		testInstance = null;
+		testInstances = null;
+		predicted = null;
 	}
 }
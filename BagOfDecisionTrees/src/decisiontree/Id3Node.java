@@ -1,56 +1,59 @@
 package decisiontree;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 
 public class Id3Node extends Node implements Serializable {
-	private List<String> attributesTested;
-	private Instances instances;
+	// columns of the discrete attributes tested along the path to this node,
+	// only needed while the node is grown
+	private transient BitSet attributesTested;
 	private String classifier;
 	private String attribute;
 	private double split;
 	private String value;
 	private double purity;
 	private double entropy;
+	private int column = -1;
+	private int code = -1;
+	private int size;
+	private int depth;
+	// number of classifiers, and the class id and count of each classifier
+	// reaching this node, most of which are reached by a few classes only
+	private int classes;
+	private int[] counts;
+	// index of the child taken by attribute values not seen in training
+	private int majorityBranch;
+	// index of the child taken by each dictionary code of the attribute
+	// value, the majority branch for codes no child was grown for
+	private int[] branches;
+	private String majorityClassifier;
 
 	/**
 	 * Constructor for root node
-	 * 
-	 * @param instances
 	 */
-	public Id3Node(Instances instances) {
+	public Id3Node() {
 		// create root node with no parent
 		super(null);
-		// set instances for this node
-		setInstances(instances);
-		// create attributes tested list
-		attributesTested = new ArrayList<String>();
+		// create attributes tested set
+		attributesTested = new BitSet();
 	}
 
 	/**
 	 * Constructor for child nodes
 	 * 
-	 * @param instances
+	 * @param attributesTested
+	 *            columns of the discrete attributes tested along the path
 	 * @param parent
 	 */
-	public Id3Node(Instances instances, List<String> attributesTested,
-			Id3Node parent) {
-		// create root node with parent
+	public Id3Node(BitSet attributesTested, Id3Node parent) {
+		// create child node with parent
 		super(parent);
-		// set instances for this node
-		setInstances(instances);
 		// set attributes tested for this node
 		setAttributesTested(attributesTested);
-	}
-
-	/**
-	 * Getter method for instances
-	 * 
-	 * @return instances
-	 */
-	public Instances instances() {
-		return instances;
+		// one level below its parent
+		depth = parent != null ? parent.depth() + 1 : 0;
 	}
 
 	/**
@@ -80,6 +83,93 @@ public class Id3Node extends Node implements Serializable {
 		return value;
 	}
 
+	/**
+	 * Getter method for the attribute column index, -1 when the node was
+	 * trained from instances rather than columnar instances
+	 * 
+	 * @return attribute column index
+	 */
+	public int column() {
+		return column;
+	}
+
+	/**
+	 * Getter method for the dictionary code of the attribute value
+	 * 
+	 * @return attribute value code
+	 */
+	public int code() {
+		return code;
+	}
+
+	/**
+	 * Getter method for the number of training rows reaching this node
+	 * 
+	 * @return number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Getter method for the classifier counts of the training rows reaching
+	 * this node, indexed by class id
+	 * 
+	 * @return array of counts, or null when not recorded
+	 */
+	public int[] counts() {
+		if (counts == null)
+			return null;
+		int[] dense = new int[classes];
+		for (int i = 0; i < counts.length; i += 2) {
+			dense[counts[i]] = counts[i + 1];
+		}
+		return dense;
+	}
+
+	/**
+	 * Getter method for the depth of this node, 0 for the root
+	 * 
+	 * @return number of nodes above this one
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Getter method for the index of the child holding the majority attribute
+	 * value of the training rows, used to choose a branch for values not seen
+	 * during training
+	 * 
+	 * @return index of the majority child node
+	 */
+	public int majorityBranch() {
+		return majorityBranch;
+	}
+
+	/**
+	 * Get the index of the child a dictionary code of the attribute value
+	 * branches to, in one array load whatever the number of values
+	 * 
+	 * @param code
+	 *            attribute value code, negative when unknown
+	 * @return index of the child node
+	 */
+	public int branch(int code) {
+		return code >= 0 && code < branches.length ? branches[code]
+				: majorityBranch;
+	}
+
+	/**
+	 * Getter method for the majority classifier of the training rows
+	 * reaching this node, kept for inner nodes too so they can be pruned
+	 * 
+	 * @return majority classifier
+	 */
+	public String majorityClassifier() {
+		return majorityClassifier;
+	}
+
 	/**
 	 * Getter method for split value
 	 * 
@@ -128,23 +218,17 @@ public class Id3Node extends Node implements Serializable {
 	}
 
 	/**
-	 * Getter method for exclusion list
+	 * Getter method for the columns excluded from splits below this node,
+	 * the discrete attributes already split on with a branch for each value.
+	 * Continuous attributes may be split again at other thresholds
 	 * 
-	 * @return
+	 * @return columns of the attributes tested, or null once the node is
+	 *         grown
 	 */
-	public List<String> attributesTested() {
+	public BitSet attributesTested() {
 		return attributesTested;
 	}
 
-	/**
-	 * Set instances for this node
-	 * 
-	 * @param instances
-	 */
-	public void setInstances(Instances instances) {
-		this.instances = instances;
-	}
-
 	/**
 	 * Set classifier for this node
 	 * 
@@ -182,45 +266,133 @@ public class Id3Node extends Node implements Serializable {
 	}
 
 	/**
-	 * Set purity for this node
+	 * Set attribute column index for this node
 	 * 
-	 * @param purity
+	 * @param column
 	 */
-	public void setPurity(double purity) {
-		this.purity = purity;
+	public void setColumn(int column) {
+		this.column = column;
 	}
 
 	/**
-	 * Set entropy value for this node
+	 * Set attribute value code for this node
 	 * 
-	 * @param entropy
+	 * @param code
 	 */
-	public void setEntropy(double entropy) {
-		this.entropy = entropy;
+	public void setCode(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * Set number of training rows reaching this node
+	 * 
+	 * @param size
+	 */
+	public void setSize(int size) {
+		this.size = size;
 	}
 
 	/**
-	 * Set attribute exclusion list
+	 * Set index of the majority child node for this node
+	 * 
+	 * @param majorityBranch
 	 */
-	public void setAttributesTested(List<String> attributesTested) {
-		this.attributesTested = attributesTested;
+	public void setMajorityBranch(int majorityBranch) {
+		this.majorityBranch = majorityBranch;
 	}
 
 	/**
-	 * Recursively set all 'instances' to null for each child that belongs to this node
-	 * @param n
+	 * Set the children taken by each dictionary code of the attribute value,
+	 * from the codes of the child nodes, sending codes without a child to
+	 * the majority branch
+	 * 
+	 * @param codes
+	 *            number of codes in the attribute's dictionary
 	 */
-	public void clearInstances(Id3Node n) {
-		if (n.children() == null) {
+	public void setBranches(int codes) {
+		branches = new int[codes];
+		Arrays.fill(branches, majorityBranch);
+		List<Node> children = children();
+		for (int i = 0; i < children.size(); i++) {
+			int code = ((Id3Node) children.get(i)).code();
+			if (code >= 0 && code < codes)
+				branches[code] = i;
+		}
+	}
+
+	/**
+	 * Set the children taken by each dictionary code of the attribute value
+	 * 
+	 * @param branches
+	 *            index of the child node of each code, -1 for codes taking
+	 *            the majority branch
+	 */
+	public void setBranches(int[] branches) {
+		this.branches = new int[branches.length];
+		for (int code = 0; code < branches.length; code++) {
+			this.branches[code] = branches[code] >= 0 ? branches[code]
+					: majorityBranch;
+		}
+	}
+
+	/**
+	 * Set the classifier counts of the training rows reaching this node,
+	 * keeping only the classifiers that reach it
+	 * 
+	 * @param counts
+	 *            array of counts indexed by class id, or null
+	 */
+	public void setCounts(int[] counts) {
+		if (counts == null) {
+			this.counts = null;
 			return;
 		}
-		if (n.children().size() > 0) {
-			for (Node child : n.children()) {
-				clearInstances(((Id3Node) child));
+		classes = counts.length;
+		int reached = 0;
+		for (int count : counts) {
+			if (count > 0)
+				reached++;
+		}
+		this.counts = new int[2 * reached];
+		for (int k = 0, i = 0; k < counts.length; k++) {
+			if (counts[k] > 0) {
+				this.counts[i++] = k;
+				this.counts[i++] = counts[k];
 			}
 		}
-		n.instances = null;
-		return;
+	}
 
+	/**
+	 * Set majority classifier for this node
+	 * 
+	 * @param majorityClassifier
+	 */
+	public void setMajorityClassifier(String majorityClassifier) {
+		this.majorityClassifier = majorityClassifier;
+	}
+
+	/**
+	 * Set purity for this node
+	 * 
+	 * @param purity
+	 */
+	public void setPurity(double purity) {
+		this.purity = purity;
+	}
+
+	/**
+	 * Set entropy value for this node
+	 * 
+	 * @param entropy
+	 */
+	public void setEntropy(double entropy) {
+		this.entropy = entropy;
+	}
+
+	/**
+	 * Set columns excluded from splits below this node
+	 */
+	public void setAttributesTested(BitSet attributesTested) {
+		this.attributesTested = attributesTested;
 	}
 }
@@ -0,0 +1,74 @@
+package decisiontree;
+
+public class IndexSorter {
+	// ranges smaller than this are sorted by insertion
+	private static final int INSERTION_THRESHOLD = 16;
+
+	/**
+	 * Sort a range of row indexes in ascending order of the given column
+	 * values without boxing
+	 *
+	 * @param rows
+	 * @param from
+	 *            first position, inclusive
+	 * @param to
+	 *            last position, exclusive
+	 * @param values
+	 */
+	public static void sort(int[] rows, int from, int to, double[] values) {
+		while (to - from > INSERTION_THRESHOLD) {
+			// median of three pivot
+			int mid = (from + to) >>> 1;
+			double a = values[rows[from]];
+			double b = values[rows[mid]];
+			double c = values[rows[to - 1]];
+			double pivot = a < b ? (b < c ? b : (a < c ? c : a))
+					: (a < c ? a : (b < c ? c : b));
+			// partition around the pivot
+			int i = from;
+			int j = to - 1;
+			while (i <= j) {
+				while (values[rows[i]] < pivot)
+					i++;
+				while (values[rows[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int t = rows[i];
+					rows[i++] = rows[j];
+					rows[j--] = t;
+				}
+			}
+			// recurse into the smaller side to bound the stack depth
+			if (j + 1 - from < to - i) {
+				sort(rows, from, j + 1, values);
+				from = i;
+			} else {
+				sort(rows, i, to, values);
+				to = j + 1;
+			}
+		}
+		insertionSort(rows, from, to, values);
+	}
+
+	/**
+	 * Sort a small range of row indexes by insertion
+	 *
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @param values
+	 */
+	private static void insertionSort(int[] rows, int from, int to,
+			double[] values) {
+		for (int i = from + 1; i < to; i++) {
+			int row = rows[i];
+			double value = values[row];
+			int j = i - 1;
+			while (j >= from && values[rows[j]] > value) {
+				rows[j + 1] = rows[j];
+				j--;
+			}
+			rows[j + 1] = row;
+		}
+	}
+}
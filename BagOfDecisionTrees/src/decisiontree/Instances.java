@@ -2,10 +2,8 @@ package decisiontree;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -427,6 +425,15 @@ public class Instances implements Serializable {
         return split;
     }
 
+    /**
+     * Create a columnar copy of this instance set, encoding discrete values
+     * and classifiers as dictionary codes
+     * @return columnar instances
+     */
+    public ColumnarInstances columnar() {
+        return new ColumnarInstances(this);
+    }
+
     /**
      * Merge all instances within the array, excluding the given index
      * @param instances
@@ -449,11 +456,10 @@ public class Instances implements Serializable {
         log.info("Loading data set");
         String r;
         RecordParser p;
-        FileInputStream fis = null;
         BufferedReader reader = null;
         try {
-            fis = new FileInputStream(f);
-            reader = new BufferedReader(new InputStreamReader(fis));
+            // plain, gzip or zip files are read as a stream
+            reader = DatasetReader.open(f);
             // parse header record
             p = new RecordParser(reader.readLine());
             // get attribute names from header
@@ -476,7 +482,6 @@ public class Instances implements Serializable {
         } finally {
             try {
                 if(reader != null) reader.close();
-                if(fis != null) fis.close();
             } catch (IOException e) {
                 System.out.println("IOException when closing file");
             }
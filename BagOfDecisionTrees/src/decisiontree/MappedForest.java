@@ -0,0 +1,126 @@
+package decisiontree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+
+public class MappedForest extends Forest {
+	// forest file mapped read only, nodes are read from it in place
+	private MappedByteBuffer buffer;
+	private Schema schema;
+	// byte offsets of the node arrays of each tree within the file
+	private int[] thresholds;
+	private int[] features;
+	private int[] widths;
+	private int[] nexts;
+	private int[] dispatches;
+
+	/**
+	 * Constructor mapping a forest file without copying its trees onto the
+	 * heap, processes mapping the same file share its pages
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public MappedForest(File file) throws IOException {
+		buffer = ForestFile.map(file);
+		schema = Schema.read(buffer);
+		int size = buffer.getInt();
+		int offsets = ForestFile.align(buffer.position());
+		thresholds = new int[size];
+		features = new int[size];
+		widths = new int[size];
+		nexts = new int[size];
+		dispatches = new int[size];
+		for (int i = 0; i < size; i++) {
+			int offset = (int) buffer.getLong(offsets + 8 * i);
+			int nodes = buffer.getInt(offset);
+			thresholds[i] = offset + 8;
+			features[i] = thresholds[i] + 8 * nodes;
+			widths[i] = features[i] + 4 * nodes;
+			nexts[i] = widths[i] + 4 * nodes;
+			dispatches[i] = nexts[i] + 4 * nodes;
+		}
+	}
+
+	/**
+	 * Getter method for the schema
+	 *
+	 * @return schema
+	 */
+	public Schema schema() {
+		return schema;
+	}
+
+	/**
+	 * Getter method for the number of trees
+	 *
+	 * @return number of trees
+	 */
+	public int size() {
+		return thresholds.length;
+	}
+
+	/**
+	 * Predict the class id of a row of values in schema order with one tree,
+	 * reading its nodes from the mapped file
+	 *
+	 * @param tree
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(int tree, double[] row) {
+		int threshold = thresholds[tree];
+		int feature = features[tree];
+		int width = widths[tree];
+		int next = nexts[tree];
+		int node = 0;
+		int column;
+		while ((column = buffer.getInt(feature + 4 * node)) >= 0) {
+			int codes = buffer.getInt(width + 4 * node);
+			int child = buffer.getInt(next + 4 * node);
+			if (codes < 0) {
+				node = row[column] <= buffer.getDouble(threshold + 8 * node) ? child
+						: child + 1;
+			} else {
+				int code = (int) row[column];
+				if (code < 0 || code >= codes)
+					code = codes;
+				node = buffer.getInt(dispatches[tree] + 4 * (child + code));
+			}
+		}
+		return buffer.getInt(next + 4 * node);
+	}
+
+	/**
+	 * Predict the class id of a row of columnar instances sharing the schema
+	 * of this forest with one tree, reading its nodes from the mapped file
+	 *
+	 * @param tree
+	 * @param data
+	 * @param row
+	 * @return class id, or -1 when the tree can not classify the row
+	 */
+	public int predict(int tree, ColumnarInstances data, int row) {
+		int threshold = thresholds[tree];
+		int feature = features[tree];
+		int width = widths[tree];
+		int next = nexts[tree];
+		int node = 0;
+		int column;
+		while ((column = buffer.getInt(feature + 4 * node)) >= 0) {
+			int codes = buffer.getInt(width + 4 * node);
+			int child = buffer.getInt(next + 4 * node);
+			if (codes < 0) {
+				node = data.doubles(column)[row] <= buffer.getDouble(threshold
+						+ 8 * node) ? child : child + 1;
+			} else {
+				int code = data.codes(column)[row];
+				if (code < 0 || code >= codes)
+					code = codes;
+				node = buffer.getInt(dispatches[tree] + 4 * (child + code));
+			}
+		}
+		return buffer.getInt(next + 4 * node);
+	}
+}
@@ -107,6 +107,14 @@ public class Node implements Serializable{
 			children.set(1, node);
 	}
 
+	/**
+	 * Remove every child node, making this node a leaf
+	 */
+	public void removeChildren() {
+		children = null;
+		binary = false;
+	}
+
 	/**
 	 * Initialize as binomial traversal if not already defined
 	 * 
@@ -0,0 +1,167 @@
+package decisiontree;
+
+public class OutOfBagVotes {
+	private ColumnarInstances data;
+	// rows every tree may vote on, each tree skipping those in its sample
+	private int[] population;
+	private int classes;
+	// votes of the trees that left each row out of their sample, the votes
+	// for class k on row r are found at r * classes + k
+	private int[] votes;
+
+	/**
+	 * Constructor for collecting the out of bag votes on the rows of
+	 * columnar instances
+	 *
+	 * @param data
+	 * @param population
+	 *            training rows of the whole forest, so a row is scored by
+	 *            every tree that left it out and not only by the trees of
+	 *            its own split
+	 */
+	public OutOfBagVotes(ColumnarInstances data, int[] population) {
+		this.data = data;
+		this.population = population;
+		classes = data.schema().classifiers().size();
+		votes = new int[data.size() * classes];
+	}
+
+	/**
+	 * Getter method for the training rows of the whole forest
+	 *
+	 * @return array of row indexes
+	 */
+	public int[] population() {
+		return population;
+	}
+
+	/**
+	 * Score the rows a tree was not trained on and add its votes. Rows are
+	 * predicted before taking the lock, so trees finishing on different
+	 * threads only wait for each other while counting
+	 *
+	 * @param tree
+	 *            tree compiled with the schema of the columnar instances
+	 * @param rows
+	 *            rows left out of the sample of the tree
+	 */
+	public void add(CompiledTree tree, int[] rows) {
+		int[] labels = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			labels[i] = tree.predict(data, rows[i]);
+		}
+		synchronized (this) {
+			for (int i = 0; i < rows.length; i++) {
+				if (labels[i] >= 0)
+					votes[rows[i] * classes + labels[i]]++;
+			}
+		}
+	}
+
+	/**
+	 * Get the most common out of bag class id of a row, ties going to the
+	 * lowest class id
+	 *
+	 * @param row
+	 * @return class id, or -1 when no tree left the row out of its sample
+	 */
+	public synchronized int classify(int row) {
+		int label = -1;
+		int max = 0;
+		for (int k = 0; k < classes; k++) {
+			if (votes[row * classes + k] > max) {
+				max = votes[row * classes + k];
+				label = k;
+			}
+		}
+		return label;
+	}
+
+	/**
+	 * Get the most common out of bag class id of each of the given rows
+	 *
+	 * @param rows
+	 * @return array of class ids, -1 where no tree left the row out
+	 */
+	public int[] classify(int[] rows) {
+		int[] labels = new int[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			labels[i] = classify(rows[i]);
+		}
+		return labels;
+	}
+
+	/**
+	 * Get the rows voted on by at least one tree
+	 *
+	 * @return array of row indexes
+	 */
+	public int[] rows() {
+		int count = count();
+		int[] rows = new int[count];
+		for (int row = 0, k = 0; k < count; row++) {
+			if (classify(row) >= 0)
+				rows[k++] = row;
+		}
+		return rows;
+	}
+
+	/**
+	 * Get the number of rows voted on by at least one tree
+	 *
+	 * @return number of rows
+	 */
+	public int count() {
+		int count = 0;
+		for (int row = 0; row < data.size(); row++) {
+			if (classify(row) >= 0)
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of rows whose out of bag vote differs from their
+	 * classifier
+	 *
+	 * @return number of misclassified rows
+	 */
+	public int errors() {
+		int[] labels = data.labels();
+		int errors = 0;
+		for (int row = 0; row < data.size(); row++) {
+			int label = classify(row);
+			if (label >= 0 && label != labels[row])
+				errors++;
+		}
+		return errors;
+	}
+
+	/**
+	 * Get the out of bag accuracy over the rows voted on
+	 *
+	 * @return fraction of rows classified correctly, NaN when no row was
+	 *         voted on
+	 */
+	public double accuracy() {
+		int count = count();
+		return count > 0 ? 1.0 - (double) errors() / (double) count
+				: Double.NaN;
+	}
+
+	/**
+	 * Count the out of bag votes by classifier and voted class id
+	 *
+	 * @return matrix holding at [k][j] the rows of class k voted class j
+	 */
+	public int[][] confusionMatrix() {
+		int[] labels = data.labels();
+		int[][] matrix = new int[classes][classes];
+		for (int row = 0; row < data.size(); row++) {
+			int label = classify(row);
+			if (label >= 0)
+				matrix[labels[row]][label]++;
+		}
+		return matrix;
+	}
+}
@@ -0,0 +1,388 @@
+package decisiontree;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+public class RecordScanner {
+	private static final Log log = LogFactory.getLog(RecordScanner.class);
+	// bytes read from the stream at a time
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	// powers of ten represented exactly as doubles
+	private static final double[] POWERS = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5,
+			1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+			1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+	// largest mantissa represented exactly as a double
+	private static final long MAX_MANTISSA = 1L << 53;
+
+	private InputStream in;
+	// bytes read but not yet parsed lie between position and limit
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	// value codes by raw bytes, per discrete column and for the classifier
+	private ValueTable[] tables;
+	private ValueTable classifiers;
+	private Schema schema;
+	// encoded values and field bounds of the current record, reused
+	private double[] row;
+	private int[] starts;
+	private int[] ends;
+
+	/**
+	 * Constructor for parsing records from byte arrays
+	 */
+	public RecordScanner() {
+		this(null);
+	}
+
+	/**
+	 * Constructor for scanning the records of a stream
+	 *
+	 * @param in
+	 */
+	public RecordScanner(InputStream in) {
+		this.in = in;
+		buffer = new byte[BUFFER_SIZE];
+		starts = new int[64];
+		ends = new int[64];
+	}
+
+	/**
+	 * Read the next line of the stream as a string, used for the header
+	 * record
+	 *
+	 * @return line without its terminator, or null at the end of the stream
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException {
+		while (true) {
+			for (int i = position; i < limit; i++) {
+				if (buffer[i] == '\n') {
+					String line = decode(buffer, position, trim(buffer,
+							position, i));
+					position = i + 1;
+					return line;
+				}
+			}
+			if (!fill()) {
+				if (position == limit)
+					return null;
+				String line = decode(buffer, position, trim(buffer, position,
+						limit));
+				position = limit;
+				return line;
+			}
+		}
+	}
+
+	/**
+	 * Parse every remaining record of the stream into the given columnar
+	 * instances
+	 *
+	 * @param data
+	 * @return number of rows added
+	 * @throws IOException
+	 */
+	public int read(ColumnarInstances data) throws IOException {
+		int before = data.size();
+		while (true) {
+			position = parse(buffer, position, limit, false, data);
+			if (!fill()) {
+				position = parse(buffer, position, limit, true, data);
+				break;
+			}
+		}
+		return data.size() - before;
+	}
+
+	/**
+	 * Keep unparsed bytes at the start of the buffer and read more after
+	 * them, growing the buffer when a single line fills it
+	 *
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length << 1);
+		}
+		int n = in.read(buffer, limit, buffer.length - limit);
+		if (n < 0)
+			return false;
+		limit += n;
+		return true;
+	}
+
+	/**
+	 * Parse the complete lines of a byte range into the given columnar
+	 * instances. Continuous values are parsed in place and discrete values
+	 * looked up by their bytes, so strings are only created for values not
+	 * seen before
+	 *
+	 * @param bytes
+	 * @param from
+	 *            first byte, inclusive
+	 * @param to
+	 *            last byte, exclusive
+	 * @param end
+	 *            whether the range ends the input, so a final line without
+	 *            a terminator is parsed too
+	 * @param data
+	 * @return position after the last line parsed
+	 */
+	public int parse(byte[] bytes, int from, int to, boolean end,
+			ColumnarInstances data) {
+		if (schema != data.schema()) {
+			prepare(data.schema());
+		}
+		int start = from;
+		while (start < to) {
+			int stop = start;
+			while (stop < to && bytes[stop] != '\n')
+				stop++;
+			if (stop == to && !end)
+				break;
+			parseLine(bytes, start, trim(bytes, start, stop), data);
+			start = stop + 1;
+		}
+		return Math.min(start, to);
+	}
+
+	/**
+	 * Create the value tables for the columns of a schema
+	 *
+	 * @param schema
+	 */
+	private void prepare(Schema schema) {
+		this.schema = schema;
+		tables = new ValueTable[schema.size()];
+		for (int i = 0; i < schema.size(); i++) {
+			if (!schema.isContinuous(i)) {
+				tables[i] = new ValueTable(schema.dictionary(i));
+			}
+		}
+		classifiers = new ValueTable(schema.classifiers());
+		row = new double[schema.size()];
+	}
+
+	/**
+	 * Parse a single record and add it as a row
+	 *
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @param data
+	 */
+	private void parseLine(byte[] bytes, int from, int to,
+			ColumnarInstances data) {
+		if (from == to)
+			return;
+		// find the bounds of every comma separated field
+		int fields = 0;
+		int start = from;
+		for (int i = from; i <= to; i++) {
+			if (i == to || bytes[i] == ',') {
+				if (fields == starts.length) {
+					starts = Arrays.copyOf(starts, fields << 1);
+					ends = Arrays.copyOf(ends, fields << 1);
+				}
+				starts[fields] = start;
+				ends[fields] = i;
+				fields++;
+				start = i + 1;
+			}
+		}
+		// the last field holds the classifier
+		if (fields <= row.length) {
+			log.info("Skipping record with " + fields + " fields: "
+					+ decode(bytes, from, to));
+			return;
+		}
+		for (int i = 0; i < row.length; i++) {
+			if (tables[i] == null) {
+				row[i] = parseDouble(bytes, starts[i], ends[i], i);
+			} else {
+				row[i] = tables[i].code(bytes, starts[i], ends[i]);
+			}
+		}
+		int last = fields - 1;
+		data.add(row, classifiers.code(bytes, starts[last], ends[last]));
+	}
+
+	/**
+	 * Parse a continuous value in place. Plain decimals with few enough
+	 * digits are converted exactly without creating a string, anything else
+	 * falls back to Double.parseDouble, using zero when malformed
+	 *
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @param column
+	 * @return double value
+	 */
+	private double parseDouble(byte[] bytes, int from, int to, int column) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+			negative = bytes[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = -1;
+		for (; i < to; i++) {
+			int c = bytes[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (scale >= 0)
+					scale++;
+				if (digits > 18)
+					break;
+			} else if (c == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == to && digits > 0 && mantissa <= MAX_MANTISSA
+				&& scale < POWERS.length) {
+			// both operands are exact, so the quotient is correctly rounded
+			double value = scale > 0 ? mantissa / POWERS[scale] : mantissa;
+			return negative ? -value : value;
+		}
+		String value = decode(bytes, from, to);
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException nfe) {
+			log.info("Number format exception for value " + value
+					+ " on attribute " + schema.name(column));
+		}
+		return 0.0;
+	}
+
+	/**
+	 * Get the end of a line without a trailing carriage return
+	 *
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @return end of the line
+	 */
+	private static int trim(byte[] bytes, int from, int to) {
+		return to > from && bytes[to - 1] == '\r' ? to - 1 : to;
+	}
+
+	/**
+	 * Decode a byte range as a string
+	 *
+	 * @param bytes
+	 * @param from
+	 * @param to
+	 * @return string value
+	 */
+	private static String decode(byte[] bytes, int from, int to) {
+		return new String(bytes, from, to - from, UTF8);
+	}
+
+	/**
+	 * Open addressing table from the raw bytes of values to their dictionary
+	 * codes, adding values to the dictionary the first time they are seen
+	 */
+	private static class ValueTable {
+		private ValueDictionary dictionary;
+		private byte[][] keys;
+		private int[] codes;
+		private int count;
+
+		public ValueTable(ValueDictionary dictionary) {
+			this.dictionary = dictionary;
+			keys = new byte[16][];
+			codes = new int[16];
+		}
+
+		/**
+		 * Get the code of the value held by a byte range
+		 *
+		 * @param bytes
+		 * @param from
+		 * @param to
+		 * @return dictionary code
+		 */
+		public int code(byte[] bytes, int from, int to) {
+			int hash = 1;
+			for (int i = from; i < to; i++)
+				hash = 31 * hash + bytes[i];
+			int mask = keys.length - 1;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			byte[] key;
+			while ((key = keys[slot]) != null) {
+				if (matches(key, bytes, from, to))
+					return codes[slot];
+				slot = (slot + 1) & mask;
+			}
+			// first time this value is seen by the table
+			int code = dictionary.add(decode(bytes, from, to));
+			keys[slot] = Arrays.copyOfRange(bytes, from, to);
+			codes[slot] = code;
+			if (++count * 2 > keys.length)
+				grow();
+			return code;
+		}
+
+		/**
+		 * Compare a key with a byte range
+		 *
+		 * @param key
+		 * @param bytes
+		 * @param from
+		 * @param to
+		 * @return whether the bytes are equal
+		 */
+		private static boolean matches(byte[] key, byte[] bytes, int from,
+				int to) {
+			if (key.length != to - from)
+				return false;
+			for (int i = 0; i < key.length; i++) {
+				if (key[i] != bytes[from + i])
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Double the table, keeping it at most half full
+		 */
+		private void grow() {
+			byte[][] oldKeys = keys;
+			int[] oldCodes = codes;
+			keys = new byte[oldKeys.length << 1][];
+			codes = new int[oldKeys.length << 1];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				byte[] key = oldKeys[i];
+				if (key == null)
+					continue;
+				int hash = 1;
+				for (byte b : key)
+					hash = 31 * hash + b;
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (keys[slot] != null)
+					slot = (slot + 1) & mask;
+				keys[slot] = key;
+				codes[slot] = oldCodes[i];
+			}
+		}
+	}
+}
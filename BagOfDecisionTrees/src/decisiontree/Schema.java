@@ -0,0 +1,239 @@
+package decisiontree;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Schema implements Serializable {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private String[] names;
+	private String classifier;
+	private Map<String, Integer> indexes;
+	private ValueDictionary[] dictionaries;
+	private ValueDictionary classifiers;
+
+	/**
+	 * Constructor for schema given the attribute names and classifier name
+	 * taken from a header record
+	 *
+	 * @param names
+	 * @param classifier
+	 */
+	public Schema(String[] names, String classifier) {
+		this.names = names;
+		this.classifier = classifier;
+		indexes = new HashMap<String, Integer>();
+		dictionaries = new ValueDictionary[names.length];
+		for (int i = 0; i < names.length; i++) {
+			indexes.put(names[i], i);
+			// discrete attributes share a dictionary of value codes
+			if (!isContinuous(i)) {
+				dictionaries[i] = new ValueDictionary();
+			}
+		}
+		classifiers = new ValueDictionary();
+	}
+
+	/**
+	 * Getter method for the number of attributes
+	 *
+	 * @return number of attributes
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Getter method for the attribute names in column order
+	 *
+	 * @return array of attribute names
+	 */
+	public String[] names() {
+		return names;
+	}
+
+	/**
+	 * Getter method for the name of an attribute column
+	 *
+	 * @param column
+	 * @return attribute name
+	 */
+	public String name(int column) {
+		return names[column];
+	}
+
+	/**
+	 * Getter method for the column of a given attribute name
+	 *
+	 * @param name
+	 * @return column index, or -1 when the attribute is not defined
+	 */
+	public int index(String name) {
+		Integer index = indexes.get(name);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Getter method for whether an attribute column contains continuous
+	 * ranged values
+	 *
+	 * @param column
+	 * @return true if the column contains continuous ranged values
+	 */
+	public boolean isContinuous(int column) {
+		return Instance.isContinuous(names[column]);
+	}
+
+	/**
+	 * Getter method for the value dictionary of a discrete attribute column
+	 *
+	 * @param column
+	 * @return value dictionary, or null for continuous columns
+	 */
+	public ValueDictionary dictionary(int column) {
+		return dictionaries[column];
+	}
+
+	/**
+	 * Getter method for the classifier name
+	 *
+	 * @return classifier name
+	 */
+	public String classifier() {
+		return classifier;
+	}
+
+	/**
+	 * Getter method for the classifier dictionary
+	 *
+	 * @return classifier dictionary
+	 */
+	public ValueDictionary classifiers() {
+		return classifiers;
+	}
+
+	/**
+	 * Encode a record of string values in schema order as a row of doubles,
+	 * discrete values replaced by their dictionary codes or -1 when unseen
+	 *
+	 * @param values
+	 * @return array of encoded values
+	 */
+	public double[] encode(String[] values) {
+		double[] row = new double[names.length];
+		for (int i = 0; i < names.length; i++) {
+			if (dictionaries[i] != null) {
+				row[i] = dictionaries[i].code(values[i]);
+			} else {
+				try {
+					row[i] = Double.parseDouble(values[i]);
+				} catch (NumberFormatException nfe) {
+					row[i] = 0.0;
+				} catch (NullPointerException npe) {
+					row[i] = 0.0;
+				}
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * Write the attribute names, dictionaries, classifier name and
+	 * classifiers. Strings are written as an int byte length, -1 for null,
+	 * followed by their UTF-8 bytes
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(names.length);
+		for (int i = 0; i < names.length; i++) {
+			writeString(out, names[i]);
+			if (dictionaries[i] == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(dictionaries[i].size());
+				for (String value : dictionaries[i].values()) {
+					writeString(out, value);
+				}
+			}
+		}
+		writeString(out, classifier);
+		out.writeInt(classifiers.size());
+		for (String value : classifiers.values()) {
+			writeString(out, value);
+		}
+	}
+
+	/**
+	 * Read a schema written by write, with dictionaries in code order
+	 *
+	 * @param buffer
+	 * @return schema
+	 */
+	public static Schema read(ByteBuffer buffer) {
+		String[] names = new String[buffer.getInt()];
+		String[][] values = new String[names.length][];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = readString(buffer);
+			int count = buffer.getInt();
+			if (count >= 0) {
+				values[i] = new String[count];
+				for (int j = 0; j < count; j++) {
+					values[i][j] = readString(buffer);
+				}
+			}
+		}
+		Schema schema = new Schema(names, readString(buffer));
+		for (int i = 0; i < names.length; i++) {
+			if (values[i] != null) {
+				for (String value : values[i]) {
+					schema.dictionary(i).add(value);
+				}
+			}
+		}
+		int classes = buffer.getInt();
+		for (int i = 0; i < classes; i++) {
+			schema.classifiers().add(readString(buffer));
+		}
+		return schema;
+	}
+
+	/**
+	 * Write a string as its UTF-8 byte length followed by its bytes
+	 *
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	private static void writeString(DataOutputStream out, String value)
+			throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string written by writeString
+	 *
+	 * @param buffer
+	 * @return string value
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,109 @@
+package decisiontree;
+
+public class Split {
+	private int column;
+	private double gain;
+	private double decrease;
+	private double threshold;
+	// branch of each value code for binary subset splits of discrete columns
+	private int[] branches;
+
+	/**
+	 * Constructor for the split of a node on an attribute column
+	 * 
+	 * @param column
+	 * @param gain
+	 *            information gain of the split
+	 * @param threshold
+	 *            split value for continuous columns, NaN for discrete columns
+	 */
+	public Split(int column, double gain, double threshold) {
+		this(column, gain, gain, threshold);
+	}
+
+	/**
+	 * Constructor for the split of a node on an attribute column scored
+	 * apart from its impurity decrease
+	 * 
+	 * @param column
+	 * @param gain
+	 *            score of the split
+	 * @param decrease
+	 *            impurity of the node less the weighted impurity of the
+	 *            branches
+	 * @param threshold
+	 *            split value for continuous columns, NaN for discrete columns
+	 */
+	public Split(int column, double gain, double decrease, double threshold) {
+		this.column = column;
+		this.gain = gain;
+		this.decrease = decrease;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Constructor for the binary split of a node on a subset of the values of
+	 * a discrete attribute column
+	 * 
+	 * @param column
+	 * @param gain
+	 *            score of the split
+	 * @param decrease
+	 *            impurity of the node less the weighted impurity of the
+	 *            branches
+	 * @param branches
+	 *            branch of each value code, 0 for the subset and 1 for the
+	 *            rest, -1 for codes no row of the node holds
+	 */
+	public Split(int column, double gain, double decrease, int[] branches) {
+		this(column, gain, decrease, Double.NaN);
+		this.branches = branches;
+	}
+
+	/**
+	 * Getter method for the attribute column
+	 * 
+	 * @return column index
+	 */
+	public int column() {
+		return column;
+	}
+
+	/**
+	 * Getter method for the information gain
+	 * 
+	 * @return information gain
+	 */
+	public double gain() {
+		return gain;
+	}
+
+	/**
+	 * Getter method for the impurity decrease
+	 * 
+	 * @return impurity decrease
+	 */
+	public double decrease() {
+		return decrease;
+	}
+
+	/**
+	 * Getter method for the split value of a continuous column
+	 * 
+	 * @return split value
+	 */
+	public double threshold() {
+		return threshold;
+	}
+
+	/**
+	 * Getter method for the branch of each value code of a binary subset
+	 * split
+	 * 
+	 * @return branches indexed by value code, or null when the split is not
+	 *         a subset split
+	 */
+	public int[] branches() {
+		return branches;
+	}
+}
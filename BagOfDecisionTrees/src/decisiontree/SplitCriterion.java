@@ -0,0 +1,39 @@
+package decisiontree;
+
+import java.io.Serializable;
+
+/**
+ * Scores the splits of a node from the class counts of the node and of its
+ * branches. A split is worth the impurity of the node less the impurity of
+ * its branches weighted by their sizes, which the criterion may normalize
+ * by the sizes of the branches
+ */
+public interface SplitCriterion extends Serializable {
+	/**
+	 * Compute the impurity of a set of rows, 0 when every row has the same
+	 * class
+	 * 
+	 * @param counts
+	 *            classifier counts of the rows
+	 * @param total
+	 *            number of rows
+	 * @return impurity value
+	 */
+	double impurity(int[] counts, int total);
+
+	/**
+	 * Compute the score of a split given how much it decreases impurity
+	 * 
+	 * @param decrease
+	 *            impurity of the node less the weighted impurity of its
+	 *            branches
+	 * @param sizes
+	 *            number of rows in each branch
+	 * @param branches
+	 *            number of branches, the first entries of sizes
+	 * @param total
+	 *            number of rows in the node
+	 * @return score, higher for better splits
+	 */
+	double gain(double decrease, int[] sizes, int branches, int total);
+}
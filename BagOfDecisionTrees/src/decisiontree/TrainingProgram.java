@@ -1,15 +1,12 @@
 package decisiontree;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -19,12 +16,26 @@ public class TrainingProgram {
 
 	private String[] attributeNames;
 	private String classifier;
-	private ArrayList<String> rawTrainingData;
+	private Schema schema;
+	// loaded data set, and its rows in shuffled order
+	private ColumnarInstances data;
+	private int[] order;
 
 	public int totalClassifications;
 	public int totalMisClassifications;
 
+	// number of threads training trees concurrently
+	private int threads;
+	// seed for shuffling the data and choosing random attributes
+	private long seed;
+	// whether parsed data sets are cached in binary next to the file
+	private boolean cacheData;
+	// settings every tree is trained with, passed to each tree trainer
+	private TreeOptions options;
+
 	private BagOfTrees bagOfTrees;
+	// votes of each bootstrap tree on the rows it was not trained on
+	private OutOfBagVotes outOfBag;
 
 	/**
 	 * Default constructor
@@ -32,6 +43,50 @@ public class TrainingProgram {
 	public TrainingProgram() {
 		totalClassifications = 0;
 		totalMisClassifications = 0;
+		threads = Runtime.getRuntime().availableProcessors();
+		seed = new Random().nextLong();
+		options = new TreeOptions().withBootstrap(true);
+	}
+
+	/**
+	 * Set the number of threads training trees concurrently
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the seed so runs are repeatable, the trees trained do not depend
+	 * on the number of threads
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Cache the parsed data set in a binary columnar file next to it, so
+	 * later runs on the same file map the columns instead of parsing
+	 */
+	public void setCacheData(boolean cacheData) {
+		this.cacheData = cacheData;
+	}
+
+	/**
+	 * Getter method for the settings every tree is trained with
+	 *
+	 * @return tree options, bootstrapping by default
+	 */
+	public TreeOptions options() {
+		return options;
+	}
+
+	/**
+	 * Train trees with the given settings. Trees bootstrap their split and
+	 * vote out of bag when the options bootstrap, and reduced error pruning
+	 * holds out the tail of each split to prune on
+	 */
+	public void setOptions(TreeOptions options) {
+		this.options = options;
 	}
 
 	/**
@@ -53,12 +108,12 @@ public class TrainingProgram {
 	}
 
 	/**
-	 * Serialize bag of tree
+	 * Write bag of trees in the compact forest format
 	 */
 	public void Save(String path_to_file) {
 
 		log.info("Saving the trees (bag of trees) to file: " + path_to_file);
-		bagOfTrees.serializeBagToFile(path_to_file);
+		bagOfTrees.writeForestToFile(path_to_file, schema);
 	}
 
 	/**
@@ -66,55 +121,120 @@ public class TrainingProgram {
 	 * chunks
 	 */
 	private void trainTreesOnDataSplits() {
-		// Break up the raw training data into small pieces that trees will be
+		// Break up the shuffled rows into small pieces that trees will be
 		// trained from
-		int dataForTraining = rawTrainingData.size()
-				- (rawTrainingData.size() / 66);
-		int dataForTesting = rawTrainingData.size() - dataForTraining;
+		int dataForTraining = order.length - (order.length / 66);
 		int dataSplitFactor = 100;
 		int dataSplit = dataForTraining / dataSplitFactor;
+		List<int[]> splits = new ArrayList<int[]>();
 
 		for (int i = 0; i < dataSplitFactor; i++) {
-			if ((i % 5) == 0) {
-				log.info("Creating trees for data split " + i);
-			}
 			int fromItem = i * dataSplit;
 			// In case of odd numbers, make sure we catch the last record
 			int toItem = (i == dataSplitFactor - 1) ? dataForTraining
 					: fromItem + dataSplit;
 
-			List<Instance> tempInstances = parseStringToInstance(rawTrainingData
-					.subList(fromItem, toItem));
-
-			// Train trees for this sub-split of data
-			trainTrees(tempInstances, 5);
+			splits.add(Arrays.copyOfRange(order, fromItem, toItem));
 
 			// TODO: temporary stop while testing...
 			//if (i == 2)
 			//	break;
 		}
 
+		// Bootstrap trees vote on the training rows of every split left out
+		// of their sample as they finish training
+		outOfBag = options.bootstrap() ? new OutOfBagVotes(data, trainingRows(splits))
+				: null;
+
+		// Trees of every split train concurrently
+		BaggingTrainer trainer = new BaggingTrainer(threads);
+		List<List<Future<Id3>>> pending = new ArrayList<List<Future<Id3>>>();
+
+		for (int i = 0; i < splits.size(); i++) {
+			if ((i % 5) == 0) {
+				log.info("Creating trees for data split " + i);
+			}
+			// Train trees for this sub-split of data
+			pending.add(trainTrees(trainer, splits.get(i), i, 5));
+		}
+
+		// Test and add the trees of each split in order
+		for (int i = 0; i < splits.size(); i++) {
+			addTrees(splits.get(i), BaggingTrainer.collect(pending.get(i)));
+		}
+		trainer.shutdown();
+
+		if (outOfBag != null) {
+			// The out of bag votes are complete once every tree is trained
+			int[] rows = outOfBag.rows();
+			totalClassifications = rows.length;
+			totalMisClassifications = outOfBag.errors();
+			log.info("Out of bag accuracy " + outOfBag.accuracy());
+			log.info("Out of bag confusion matrix");
+			generateConfussionMatrix(rows, outOfBag.classify(rows));
+		}
+
 		// Print confusion matrix for the data set aside for testing
-		generateConfussionMatrix(parseStringToInstance(rawTrainingData.subList(
-				dataForTesting, rawTrainingData.size())));
+		generateConfussionMatrix(Arrays.copyOfRange(order, dataForTraining,
+				order.length));
+	}
+
+	/**
+	 * Get the rows of the splits that trees train on, leaving out the tails
+	 * held out for testing or pruning
+	 */
+	private int[] trainingRows(List<int[]> splits) {
+		int count = 0;
+		for (int[] rows : splits) {
+			count += trainingSize(rows);
+		}
+		int[] trainingRows = new int[count];
+		int k = 0;
+		for (int[] rows : splits) {
+			int size = trainingSize(rows);
+			System.arraycopy(rows, 0, trainingRows, k, size);
+			k += size;
+		}
+		return trainingRows;
+	}
+
+	/**
+	 * Get the number of rows at the head of a split that trees train on.
+	 * Bootstrap trees are tested on the rows left out of their sample,
+	 * otherwise the tail of the split is set aside for testing. The tail is
+	 * also held out when pruning on it
+	 */
+	private int trainingSize(int[] rows) {
+		boolean heldOut = !options.bootstrap() || options.reducedErrorPruning();
+		return heldOut ? rows.length - (rows.length / 66) : rows.length;
+	}
+
+	/**
+	 * Generate a confusion matrix from the given rows
+	 */
+	private void generateConfussionMatrix(int[] rows) {
+		// Vote on all rows at once, each tree scoring a block of rows in turn
+		generateConfussionMatrix(rows, bagOfTrees.classifyByVote(data, rows));
 	}
 
 	/**
-	 * Generate a confusion matrix from the list of Instance(s)
+	 * Generate a confusion matrix from the given rows and the class ids
+	 * guessed for them
 	 */
-	private void generateConfussionMatrix(List<Instance> instanceList) {
+	private void generateConfussionMatrix(int[] rows, int[] guesses) {
 		log.debug("Generating confussion matrix");
 
 		// Map of instance classifications and their respective guessed
 		// classifications
 		HashMap<String, HashMap<String, Integer>> confusionMatrix = new HashMap<String, HashMap<String, Integer>>();
 
-		for (Instance instance : instanceList) {
-			String guess = bagOfTrees.classifyByVote(instance);
-			String classifier = instance.classifier();
+		for (int i = 0; i < rows.length; i++) {
+			String guess = guesses[i] >= 0 ? schema.classifiers().value(
+					guesses[i]) : "";
+			String classifier = data.classifier(rows[i]);
 
 			// Check that the guess and classification read in is not empty
-			if (!guess.equals("") || !instance.classifier().equals("")) {
+			if (!guess.equals("") || !classifier.equals("")) {
 
 				// Add classification if not currently in the collection
 				if (!confusionMatrix.containsKey(classifier)) {
@@ -155,45 +275,44 @@ public class TrainingProgram {
 		}
 	}
 
-	private List<Instance> parseStringToInstance(List<String> strings) {
-		List<Instance> tempData = new ArrayList<Instance>(strings.size());
-
-		RecordParser parser;
-
-		// Create a list of Instance objects
-		for (String s : strings) {
-			// parse data record
-			parser = new RecordParser(s);
-
-			// add the instance attribute names and values
-			tempData.add(new Instance(attributeNames, parser.values(), parser
-					.classifier()));
+	/**
+	 * Submit trees from random attributes for training
+	 */
+	private List<Future<Id3>> trainTrees(BaggingTrainer trainer, int[] rows,
+			int split, int treeCount) {
+		int trainingSize = trainingSize(rows);
+
+		// Instantiate new TreeTrainer sharing the columnar instances
+		TreeTrainer treeTrainer = new TreeTrainer(data, Arrays.copyOf(rows,
+				trainingSize));
+		treeTrainer.setOptions(options);
+		treeTrainer.setOutOfBag(outOfBag);
+		if (options.reducedErrorPruning()) {
+			treeTrainer.setValidationRows(Arrays.copyOfRange(rows,
+					trainingSize, rows.length));
 		}
-		return tempData;
+		// Seed each split differently but repeatably
+		treeTrainer.setSeed(seed + split);
+
+		return trainer.submit(treeTrainer, treeCount);
 	}
 
 	/**
-	 * Train trees from random attributes
+	 * Test trained trees and add them to the bag
 	 */
-	private void trainTrees(List<Instance> instanceList, int treeCount) {
-		Id3[] trees = new Id3[treeCount];
-
-		for (int i = 0; i < treeCount; i++) {
-			// Take 66% of the instances at random and train a tree from them
-			int trainingSize = instanceList.size() - (instanceList.size() / 66);
-			Instances instances = new Instances(instanceList.subList(0,
-					trainingSize - 1));
-
-			// Instantiate new TreeTrainer using the loaded instances
-			TreeTrainer treeTrainer = new TreeTrainer(instances);
-
-			// Add the tree to the trees array
-			trees[i] = treeTrainer.getTreeTrainedFromRandomAttributes();
+	private void addTrees(int[] rows, Id3[] trees) {
+		if (outOfBag != null) {
+			// Trees were tested on their out of bag rows while training
+			bagOfTrees.addTrees(trees);
+			return;
+		}
+		int trainingSize = rows.length - (rows.length / 66);
+		int[] testRows = Arrays.copyOfRange(rows, trainingSize, rows.length);
 
+		for (Id3 tree : trees) {
 			// Test the tree's mis-classification rate across the unused 33% of
 			// instances
-			testTree(trees[i],
-					instanceList.subList(trainingSize, instanceList.size()));
+			testTree(tree, testRows);
 		}
 
 		// Add to the bag the randomly trained trees
@@ -201,12 +320,12 @@ public class TrainingProgram {
 	}
 
 	/**
-	 * Test a tree given a list of Instance objects, and keep track of the
+	 * Test a tree given rows of columnar instances, and keep track of the
 	 * missclassification counts
 	 */
-	private void testTree(Id3 tree, List<Instance> instanceList) {
-		for (Instance instance : instanceList) {
-			if (!instance.classifier().equals(tree.classify(instance))) {
+	private void testTree(Id3 tree, int[] rows) {
+		for (int row : rows) {
+			if (!data.classifier(row).equals(tree.classify(data, row))) {
 				totalMisClassifications++;
 			}
 			totalClassifications++;
@@ -214,59 +333,43 @@ public class TrainingProgram {
 	}
 
 	/**
-	 * Given a file name, load the data in the rawTrainingData list, then call
-	 * randomizeData() to split it up into training and testing lists
+	 * Given a file name, parse the data set into columnar instances on the
+	 * training threads, then call randomizeData() to shuffle the order rows
+	 * are trained in. Plain, gzip and zip files are read without unpacking
+	 * them first, and binary caches are used when enabled
 	 */
 	public void loadData(String path_to_file) {
-
-		rawTrainingData = new ArrayList<String>();
-
-		log.info("Loading data set");
-		String fileRow;
-		RecordParser p;
-		FileInputStream fis = null;
-		BufferedReader reader = null;
-		try {
-			fis = new FileInputStream(path_to_file);
-			reader = new BufferedReader(new InputStreamReader(fis));
-			// parse header record
-			p = new RecordParser(reader.readLine());
-			// get attribute names from header
-			attributeNames = p.values();
-			log.info("Attribute names " + Arrays.toString(attributeNames));
-			// get classifier name from header
-			classifier = p.classifier();
-			log.info("Classifier name " + classifier);
-			// parse remaining records
-			while ((fileRow = reader.readLine()) != null) {
-				rawTrainingData.add(fileRow);
-			}
-		} catch (FileNotFoundException e) {
-			System.out.println("FileNotFoundException issued");
-		} catch (IOException e) {
-			System.out.println("IOException issued");
-		} finally {
-			try {
-				if (reader != null)
-					reader.close();
-				if (fis != null)
-					fis.close();
-			} catch (IOException e) {
-				System.out.println("IOException when closing file");
-			}
+		if (cacheData) {
+			data = DatasetFile.load(new File(path_to_file), threads);
+		} else {
+			data = new DatasetLoader(threads).load(new File(path_to_file));
 		}
+		// share attribute and classifier dictionaries across all splits
+		schema = data.schema();
+		attributeNames = schema.names();
+		log.info("Attribute names " + Arrays.toString(attributeNames));
+		classifier = schema.classifier();
+		log.info("Classifier name " + classifier);
 
-		log.debug("Loaded " + rawTrainingData.size() + " records");
+		log.debug("Loaded " + data.size() + " records");
 
 		randomizeData();
 	}
 
 	/**
-	 * Randomize all data that was loaded into the training program and add 33%
-	 * of it to the testing data set and retain 66% in the training data set
+	 * Randomize the order of all rows that were loaded into the training
+	 * program, the first 66% train trees and the rest test them
 	 */
 	public void randomizeData() {
-		Collections.shuffle(rawTrainingData);
+		order = data.rows();
+		// shuffle the same way as Collections.shuffle
+		Random random = new Random(seed);
+		for (int i = order.length; i > 1; i--) {
+			int j = random.nextInt(i);
+			int row = order[i - 1];
+			order[i - 1] = order[j];
+			order[j] = row;
+		}
 
 		log.debug("Randomized training data.");
 	}
@@ -275,9 +378,12 @@ public class TrainingProgram {
 		long t = System.currentTimeMillis();
 
 		// testBagOfTrees();
-		String PATH_TO_FILE = "data/kddcup.data_2_percent.txt"; // kddcup.data_10_percent.txt
-		String PATH_TO_SERIALIZED_BOT = "data/kddcup.trees";
+		String PATH_TO_FILE = "data/kddcup.data_2_percent.zip"; // kddcup.data_10_percent.zip
+		String PATH_TO_SERIALIZED_BOT = "data/kddcup.forest";
 		TrainingProgram trainingProgram = new TrainingProgram();
+		trainingProgram.setCacheData(true);
+		trainingProgram.setOptions(trainingProgram.options()
+				.withRandomForest(true));
 		trainingProgram.Run(PATH_TO_FILE);
 
 		int count = trainingProgram.getBagOfTreesSize();
@@ -0,0 +1,303 @@
+package decisiontree;
+
+import java.io.Serializable;
+
+/**
+ * Settings trees are grown and pruned with. Options are immutable, every
+ * with method returning a copy holding the changed setting, so one instance
+ * is passed from the training program through the tree trainer to every
+ * tree unchanged
+ */
+public class TreeOptions implements Serializable {
+	// impurity measure splits are scored with
+	private SplitCriterion criterion = new EntropyCriterion();
+	// whether discrete attributes split in two by subsets of their values
+	private boolean subsetSplits;
+	// limits on the growth of each tree, trading accuracy for size
+	private int maxDepth;
+	private int minSamplesSplit = 2;
+	private int minSamplesLeaf = 1;
+	private double minImpurityDecrease;
+	// whether trees are pruned by reduced error on held out rows
+	private boolean reducedErrorPruning;
+	// complexity cost per leaf for cost complexity pruning, 0 for none
+	private double alpha;
+	// maximum bins per continuous column, 0 to search exact thresholds
+	private int binCount;
+	// whether attributes are sampled at every node rather than per tree
+	private boolean randomForest;
+	// whether each tree trains on its own bootstrap sample of the rows
+	private boolean bootstrap;
+
+	/**
+	 * Default constructor, growing trees without limits on entropy scored
+	 * splits of exact thresholds, with no pruning and no bootstrap
+	 */
+	public TreeOptions() {
+	}
+
+	/**
+	 * Copy constructor for the with methods
+	 *
+	 * @param options
+	 */
+	private TreeOptions(TreeOptions options) {
+		criterion = options.criterion;
+		subsetSplits = options.subsetSplits;
+		maxDepth = options.maxDepth;
+		minSamplesSplit = options.minSamplesSplit;
+		minSamplesLeaf = options.minSamplesLeaf;
+		minImpurityDecrease = options.minImpurityDecrease;
+		reducedErrorPruning = options.reducedErrorPruning;
+		alpha = options.alpha;
+		binCount = options.binCount;
+		randomForest = options.randomForest;
+		bootstrap = options.bootstrap;
+	}
+
+	/**
+	 * Getter method for the criterion splits are scored with
+	 *
+	 * @return split criterion, entropy by default
+	 */
+	public SplitCriterion splitCriterion() {
+		return criterion;
+	}
+
+	/**
+	 * Score splits with the given criterion, such as Gini impurity or gain
+	 * ratio, rather than information gain
+	 *
+	 * @param criterion
+	 *            split criterion, entropy when null
+	 * @return options with the criterion
+	 */
+	public TreeOptions withSplitCriterion(SplitCriterion criterion) {
+		TreeOptions options = new TreeOptions(this);
+		options.criterion = criterion != null ? criterion
+				: new EntropyCriterion();
+		return options;
+	}
+
+	/**
+	 * Getter method for whether discrete attributes split by value subsets
+	 *
+	 * @return true when discrete attributes split in two
+	 */
+	public boolean subsetSplits() {
+		return subsetSplits;
+	}
+
+	/**
+	 * Split discrete attributes in two by the subset of their values that
+	 * best separates the classes, rather than with a branch for each value
+	 *
+	 * @param subsetSplits
+	 * @return options with the subset splits setting
+	 */
+	public TreeOptions withSubsetSplits(boolean subsetSplits) {
+		TreeOptions options = new TreeOptions(this);
+		options.subsetSplits = subsetSplits;
+		return options;
+	}
+
+	/**
+	 * Getter method for the maximum depth of a tree
+	 *
+	 * @return maximum depth, 0 for no limit
+	 */
+	public int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Stop growing nodes at the given depth, the root being at depth 0
+	 *
+	 * @param maxDepth
+	 *            maximum depth, 0 for no limit
+	 * @return options with the maximum depth
+	 */
+	public TreeOptions withMaxDepth(int maxDepth) {
+		TreeOptions options = new TreeOptions(this);
+		options.maxDepth = maxDepth;
+		return options;
+	}
+
+	/**
+	 * Getter method for the fewest rows a node is split with
+	 *
+	 * @return minimum rows to split a node, 2 by default
+	 */
+	public int minSamplesSplit() {
+		return minSamplesSplit;
+	}
+
+	/**
+	 * Make leaves of nodes reached by fewer than the given number of rows
+	 *
+	 * @param minSamplesSplit
+	 * @return options with the minimum rows to split a node
+	 */
+	public TreeOptions withMinSamplesSplit(int minSamplesSplit) {
+		TreeOptions options = new TreeOptions(this);
+		options.minSamplesSplit = minSamplesSplit;
+		return options;
+	}
+
+	/**
+	 * Getter method for the fewest rows a split may leave in a branch
+	 *
+	 * @return minimum rows of a branch, 1 by default
+	 */
+	public int minSamplesLeaf() {
+		return minSamplesLeaf;
+	}
+
+	/**
+	 * Only make splits leaving at least the given number of rows in every
+	 * branch
+	 *
+	 * @param minSamplesLeaf
+	 * @return options with the minimum rows of a branch
+	 */
+	public TreeOptions withMinSamplesLeaf(int minSamplesLeaf) {
+		TreeOptions options = new TreeOptions(this);
+		options.minSamplesLeaf = minSamplesLeaf;
+		return options;
+	}
+
+	/**
+	 * Getter method for the smallest impurity decrease a split must make
+	 *
+	 * @return minimum weighted impurity decrease, 0 by default
+	 */
+	public double minImpurityDecrease() {
+		return minImpurityDecrease;
+	}
+
+	/**
+	 * Only make splits decreasing impurity by at least the given value,
+	 * weighted by the fraction of the rows reaching the node
+	 *
+	 * @param minImpurityDecrease
+	 * @return options with the minimum impurity decrease
+	 */
+	public TreeOptions withMinImpurityDecrease(double minImpurityDecrease) {
+		TreeOptions options = new TreeOptions(this);
+		options.minImpurityDecrease = minImpurityDecrease;
+		return options;
+	}
+
+	/**
+	 * Getter method for whether trees are pruned by reduced error
+	 *
+	 * @return true when rows are held out to prune trees on
+	 */
+	public boolean reducedErrorPruning() {
+		return reducedErrorPruning;
+	}
+
+	/**
+	 * Prune trees by reduced error on rows held out of their training
+	 *
+	 * @param reducedErrorPruning
+	 * @return options with the reduced error pruning setting
+	 */
+	public TreeOptions withReducedErrorPruning(boolean reducedErrorPruning) {
+		TreeOptions options = new TreeOptions(this);
+		options.reducedErrorPruning = reducedErrorPruning;
+		return options;
+	}
+
+	/**
+	 * Getter method for the cost per leaf of cost complexity pruning
+	 *
+	 * @return cost per leaf as a fraction of the training rows, 0 for no
+	 *         cost complexity pruning
+	 */
+	public double costComplexityAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * Prune trees by cost complexity with the given cost per leaf once they
+	 * are grown
+	 *
+	 * @param alpha
+	 *            cost per leaf as a fraction of the training rows, 0 for no
+	 *            cost complexity pruning
+	 * @return options with the cost per leaf
+	 */
+	public TreeOptions withCostComplexityAlpha(double alpha) {
+		TreeOptions options = new TreeOptions(this);
+		options.alpha = alpha;
+		return options;
+	}
+
+	/**
+	 * Getter method for the maximum bins per continuous column
+	 *
+	 * @return bin count, 0 for exact thresholds
+	 */
+	public int binCount() {
+		return binCount;
+	}
+
+	/**
+	 * Train on class histograms over continuous columns quantized into at
+	 * most the given number of bins
+	 *
+	 * @param binCount
+	 *            maximum bins per continuous column, 0 for exact thresholds
+	 * @return options with the bin count
+	 */
+	public TreeOptions withBinCount(int binCount) {
+		TreeOptions options = new TreeOptions(this);
+		options.binCount = binCount;
+		return options;
+	}
+
+	/**
+	 * Getter method for whether attributes are sampled at every node
+	 *
+	 * @return true for random forests
+	 */
+	public boolean randomForest() {
+		return randomForest;
+	}
+
+	/**
+	 * Sample attributes at every node of each tree, as random forests do,
+	 * rather than training each tree on one random set of attributes
+	 *
+	 * @param randomForest
+	 * @return options with the random forest setting
+	 */
+	public TreeOptions withRandomForest(boolean randomForest) {
+		TreeOptions options = new TreeOptions(this);
+		options.randomForest = randomForest;
+		return options;
+	}
+
+	/**
+	 * Getter method for whether each tree trains on a bootstrap sample
+	 *
+	 * @return true when trees train on bootstrap samples
+	 */
+	public boolean bootstrap() {
+		return bootstrap;
+	}
+
+	/**
+	 * Train each tree on a bootstrap sample of its rows, drawn with
+	 * replacement as row weights, rather than on every row
+	 *
+	 * @param bootstrap
+	 * @return options with the bootstrap setting
+	 */
+	public TreeOptions withBootstrap(boolean bootstrap) {
+		TreeOptions options = new TreeOptions(this);
+		options.bootstrap = bootstrap;
+		return options;
+	}
+}
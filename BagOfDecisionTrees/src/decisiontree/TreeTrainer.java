@@ -6,7 +6,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,6 +19,22 @@ public class TreeTrainer {
 	private static final Log log = LogFactory.getLog(TreeTrainer.class);
 
 	private Instances instances;
+	private ColumnarInstances data;
+	private int[] rows;
+	private ForkJoinPool pool;
+	// base seed from which every tree derives its own random generator
+	private long seed;
+	// number of trees handed out by index so far
+	private int trained;
+	// settings every tree is trained with
+	private TreeOptions options = new TreeOptions();
+	// bootstrap weights free for the next tree, each tree taking one while
+	// it trains
+	private Queue<Bootstrap> samples = new ConcurrentLinkedQueue<Bootstrap>();
+	// held out rows each columnar tree is pruned by reduced error on
+	private int[] validationRows;
+	// votes of each tree on the rows left out of its bootstrap sample
+	private OutOfBagVotes outOfBag;
 
 	/**
 	 * Default constructor
@@ -23,6 +43,140 @@ public class TreeTrainer {
 	 */
 	public TreeTrainer(Instances instances) {
 		this.instances = instances;
+		this.seed = new Random().nextLong();
+	}
+
+	/**
+	 * Constructor for training trees on all rows of columnar instances
+	 * 
+	 * @param data
+	 */
+	public TreeTrainer(ColumnarInstances data) {
+		this(data, data.rows());
+	}
+
+	/**
+	 * Constructor for training trees on the given rows of columnar instances
+	 * 
+	 * @param data
+	 * @param rows
+	 */
+	public TreeTrainer(ColumnarInstances data, int[] rows) {
+		this.data = data;
+		this.rows = rows;
+		this.seed = new Random().nextLong();
+	}
+
+	/**
+	 * Grow each columnar tree on the given fork join pool, splitting large
+	 * subtrees and attribute scoring across its threads
+	 * 
+	 * @param pool
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Set the base seed so the same trees are trained on every run,
+	 * whichever thread trains each of them
+	 * 
+	 * @param seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Getter method for the settings every tree is trained with
+	 * 
+	 * @return tree options
+	 */
+	public TreeOptions options() {
+		return options;
+	}
+
+	/**
+	 * Train trees with the given settings, handed to each columnar tree
+	 * unchanged
+	 * 
+	 * @param options
+	 */
+	public void setOptions(TreeOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Prune each columnar tree by reduced error on the given held out rows
+	 * once it is grown, when the options ask for reduced error pruning
+	 * 
+	 * @param validationRows
+	 *            held out rows, or null for no reduced error pruning
+	 */
+	public void setValidationRows(int[] validationRows) {
+		this.validationRows = validationRows;
+	}
+
+	/**
+	 * Score each bootstrap tree on the rows of the forest left out of its
+	 * sample as soon as it is trained, adding its votes to the given out of
+	 * bag votes. The trained rows must be part of their population
+	 * 
+	 * @param outOfBag
+	 */
+	public void setOutOfBag(OutOfBagVotes outOfBag) {
+		this.outOfBag = outOfBag;
+	}
+
+	/**
+	 * Share the bootstrap weights of the trees with other trainers, so
+	 * trainers created one after the other reuse the weights of earlier ones
+	 * 
+	 * @param samples
+	 *            thread safe queue of the bootstrap weights not in use
+	 */
+	public void setSamples(Queue<Bootstrap> samples) {
+		this.samples = samples;
+	}
+
+	/**
+	 * Draw the bootstrap sample of the tree with the given generator, taking
+	 * weights no other tree is using when there are any
+	 * 
+	 * @param random
+	 * @return bootstrap sample, to be released once the tree is trained
+	 */
+	protected Bootstrap sample(Random random) {
+		Bootstrap sample = samples.poll();
+		if (sample == null || sample.weights().length < data.size()) {
+			sample = new Bootstrap(data.size());
+		}
+		sample.sample(rows, random);
+		return sample;
+	}
+
+	/**
+	 * Create the random generator of the tree with the given index, which
+	 * depends only on the base seed and the index
+	 * 
+	 * @param index
+	 * @return random generator
+	 */
+	public Random random(int index) {
+		// scramble the seed so neighbouring indexes give unrelated streams
+		long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new Random(z ^ (z >>> 31));
+	}
+
+	/**
+	 * Reserve the index of the next tree to train
+	 * 
+	 * @return tree index
+	 */
+	private synchronized int nextIndex() {
+		return trained++;
 	}
 
 	/**
@@ -30,13 +184,15 @@ public class TreeTrainer {
 	 * of attributes that are picked at random
 	 * 
 	 * @param instances
+	 * @param random
 	 * @return
 	 */
-	protected Instances splitInstancesByAttributesRandomly(Instances instances) {
+	protected Instances splitInstancesByAttributesRandomly(
+			Instances instances, Random random) {
 		// retrieve list of attributes for this instance set
 		List<String> attributes = new ArrayList<String>(instances.attributes());
 		// shuffle the list of attributes
-		Collections.shuffle(attributes);
+		Collections.shuffle(attributes, random);
 		// compute a count for the filtered attribute set
 		int count = (int) Math.round(Math.sqrt(attributes.size()));
 		// get hashset of the filtered attributes set
@@ -45,6 +201,88 @@ public class TreeTrainer {
 		return new Instances(instances, filters);
 	}
 
+	/**
+	 * Pick a random set of attribute columns of the columnar instances, of
+	 * the same size as the filtered attribute set
+	 * 
+	 * @param random
+	 * @return array of column indexes
+	 */
+	protected int[] selectColumnsRandomly(Random random) {
+		// retrieve list of attribute columns
+		List<Integer> columns = new ArrayList<Integer>();
+		for (int i = 0; i < data.schema().size(); i++) {
+			columns.add(i);
+		}
+		// shuffle the list of columns
+		Collections.shuffle(columns, random);
+		// compute a count for the filtered column set
+		int count = (int) Math.round(Math.sqrt(columns.size()));
+		int[] selected = new int[count];
+		for (int i = 0; i < count; i++) {
+			selected[i] = columns.get(i);
+		}
+		Arrays.sort(selected);
+		return selected;
+	}
+
+	/**
+	 * Create the tree with the given index, trained from a random set of
+	 * attributes. Columnar instances are shared rather than copied, so trees
+	 * may be trained concurrently
+	 * 
+	 * @param index
+	 * @return trained tree
+	 */
+	public Id3 getTreeTrainedFromRandomAttributes(int index) {
+		Random random = random(index);
+		if (data != null) {
+			int[] columns = options.randomForest() ? null
+					: selectColumnsRandomly(random);
+			Bootstrap sample = null;
+			Id3 tree;
+			if (options.bootstrap()) {
+				sample = sample(random);
+				tree = new Id3(data, sample.rows(), sample.weights());
+			} else {
+				tree = new Id3(data, rows);
+			}
+			if (options.randomForest()) {
+				// sample as many columns at each node as a tree would get
+				tree.setAttributesPerNode((int) Math.round(Math.sqrt(data
+						.schema().size())));
+				tree.setSeed(random.nextLong());
+			} else {
+				tree.setColumns(columns);
+			}
+			tree.setOptions(options);
+			tree.setForkJoinPool(pool);
+			tree.traverse();
+			if (options.costComplexityAlpha() > 0) {
+				tree.pruneCostComplexity(options.costComplexityAlpha());
+			}
+			if (options.reducedErrorPruning() && validationRows != null) {
+				tree.pruneReducedError(data, validationRows);
+			}
+			if (sample != null && outOfBag != null) {
+				// vote on the rows left out while the sample is at hand
+				outOfBag.add(tree.compile(),
+						sample.outOfBag(outOfBag.population()));
+			}
+			if (sample != null) {
+				samples.offer(sample);
+			}
+			return tree;
+		}
+		Instances randomInstances = splitInstancesByAttributesRandomly(
+				this.instances, random);
+		Id3 tree = new Id3(randomInstances);
+		tree.traverse();
+
+		tree.dropInstances();
+		return tree;
+	}
+
 	/**
 	 * Create new trees from a random set of attributes
 	 * 
@@ -57,12 +295,7 @@ public class TreeTrainer {
 
 		for (int i = 0; i < count; i++) {
 			log.info("Creating tree " + i + " from random attributes");
-			Instances randomInstances = splitInstancesByAttributesRandomly(this.instances);
-
-			trees[i] = new Id3(randomInstances);
-			trees[i].traverse();
-			// Try and clean up the tree of the instance data that it contains
-			// trees[i].dropInstances();
+			trees[i] = getTreeTrainedFromRandomAttributes(nextIndex());
 		}
 
 		return trees;
@@ -72,11 +305,6 @@ public class TreeTrainer {
 	 * Create a new tree from a random set of attributes
 	 */
 	public Id3 getTreeTrainedFromRandomAttributes() {
-		Instances randomInstances = splitInstancesByAttributesRandomly(this.instances);
-		Id3 tree = new Id3(randomInstances);
-		tree.traverse();
-		
-		tree.dropInstances();
-		return tree;
+		return getTreeTrainedFromRandomAttributes(nextIndex());
 	}
 }
@@ -0,0 +1,76 @@
+package decisiontree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ValueDictionary implements Serializable {
+	private Map<String, Integer> codes;
+	private List<String> values;
+
+	/**
+	 * Default constructor for an empty dictionary
+	 */
+	public ValueDictionary() {
+		codes = new HashMap<String, Integer>();
+		values = new ArrayList<String>();
+	}
+
+	/**
+	 * Add the given value to the dictionary if not already defined
+	 *
+	 * @param value
+	 * @return code of the value
+	 */
+	public int add(String value) {
+		Integer code = codes.get(value);
+		if (code == null) {
+			// codes are assigned densely in order of first appearance
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Getter method for the code of a given value
+	 *
+	 * @param value
+	 * @return code of the value, or -1 when the value is not defined
+	 */
+	public int code(String value) {
+		Integer code = codes.get(value);
+		return code != null ? code : -1;
+	}
+
+	/**
+	 * Getter method for the value of a given code
+	 *
+	 * @param code
+	 * @return string value
+	 */
+	public String value(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * Getter method for the number of values in the dictionary
+	 *
+	 * @return size of the dictionary
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Getter method for the list of values indexed by code
+	 *
+	 * @return list of values
+	 */
+	public List<String> values() {
+		return values;
+	}
+}